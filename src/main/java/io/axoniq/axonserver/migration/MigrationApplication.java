@@ -22,6 +22,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * @author Marc Gathier
@@ -32,6 +33,7 @@ import org.springframework.boot.autoconfigure.mongo.MongoAutoConfiguration;
         PrometheusMetricsExportAutoConfiguration.class,
         MongoAutoConfiguration.class,
 })
+@EnableScheduling
 public class MigrationApplication {
 
     public static void main(String[] args) {
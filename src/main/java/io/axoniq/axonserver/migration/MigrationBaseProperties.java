@@ -36,18 +36,45 @@ import java.util.List;
 public class MigrationBaseProperties {
     private MigrationSource source;
     private int batchSize = 100;
+    private boolean adaptiveBatchSize = false;
+    private int minBatchSize = 10;
+    private int maxBatchSize = 5000;
+    private long targetBatchBytes = 2 * 1024 * 1024;
+    private long targetBatchMillis = 1000;
     private int recentMillis = 10000;
+    private long gapWaitMillis = 0;
+    private long gapRetryMillis = 1000;
+    private int pipelineQueueSize = 2;
+    private int conversionThreads = 1;
+    private int metadataCacheSize = 10000;
+    private boolean metadataTranscoding = true;
+    private int maxInFlightTransactions = 1;
+    private int sequencePrefetchConcurrency = 16;
+    private int maxInFlightSnapshots = 1;
+    private int maxSourceConnections = 4;
+    private int maxDestinationTransactions = 8;
+    private int parallelReaders = 1;
+    private int readRangeSize = 1000;
 
     private boolean migrateSnapshots;
+    private boolean latestSnapshotsOnly = false;
+    private SnapshotOrder snapshotOrder = SnapshotOrder.TIMESTAMP;
     private boolean migrateEvents;
     private boolean reorderSequenceNumbers;
     private List<String> ignoredEvents = Collections.emptyList();
 
     private boolean continuous = false;
     private int continuousTimeout = 100;
+    private long tailPollMinMillis = 10;
+    private long tailPollMaxMillis = 1000;
+    private long lingerMillis = 0;
 
     private MigrationDestination destination;
 
+    private CheckpointStoreType checkpointStore = CheckpointStoreType.JOURNAL;
+    private String checkpointFile = "migration-checkpoint.journal";
+    private long checkpointSyncMillis = 200;
+
     public enum MigrationSource {
         RDBMS,
         MONGO,
@@ -58,6 +85,16 @@ public class MigrationBaseProperties {
         AXONSERVER
     }
 
+    public enum SnapshotOrder {
+        TIMESTAMP,
+        PRIMARY_KEY,
+    }
+
+    public enum CheckpointStoreType {
+        JOURNAL,
+        JPA,
+    }
+
     /**
      * Whether to reorder the sequence numbers because there are gaps. Gaps can be there due to manual database edits,
      * or because the migration tool has been told to skip certain event types.
@@ -19,6 +19,7 @@ package io.axoniq.axonserver.migration;
 
 import io.axoniq.axonserver.migration.migrators.Migrator;
 import lombok.RequiredArgsConstructor;
+import org.axonframework.common.AxonThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
@@ -26,15 +27,21 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 
 /**
  * Runs the available {@link Migrator} beans. Which are available depend on the property configuration.
  * <p>
- * If a continuous migration is specified through {@link MigrationBaseProperties#isContinuous()}  the migration will run
+ * The migrators run at the same time, each on its own thread, sharing the
+ * {@link io.axoniq.axonserver.migration.migrators.MigrationBudget}. A failure of one migrator does not stop the others.
+ * If a continuous migration is specified through {@link MigrationBaseProperties#isContinuous()} each migrator runs
  * indefinitely, waiting for {@link MigrationBaseProperties#getContinuousTimeout()} milliseconds before trying again.
  *
  * @author Marc Gathier
@@ -57,31 +64,47 @@ public class MigrationRunner implements CommandLineRunner {
         if (migrators.isEmpty()) {
             throw new IllegalArgumentException("There are no Migrators to run. Did you disable all migrations?");
         }
+        ExecutorService executor = Executors.newFixedThreadPool(migrators.size(), new AxonThreadFactory("migrator"));
+        try {
+            List<Future<?>> runs = new ArrayList<>();
+            for (Migrator migrator : migrators) {
+                runs.add(executor.submit(() -> runMigrator(migrator)));
+            }
+            for (Future<?> run : runs) {
+                run.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Migration interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+
+        logger.info("Migration completed");
+        // Closing the context writes out the checkpoint store and stops the other threads
+        System.exit(SpringApplication.exit(context));
+    }
+
+    private void runMigrator(Migrator migrator) {
+        String name = migrator.getClass().getSimpleName();
         do {
             try {
-                for (Migrator migrator : migrators) {
-                    migrator.migrate();
-                }
+                migrator.migrate();
                 if(migrationProperties.isContinuous()) {
                     Thread.sleep(migrationProperties.getContinuousTimeout());
                 }
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-                logger.error("Migration interrupted");
+                logger.error("{} interrupted", name);
+                return;
             } catch (ExecutionException executionException) {
-                logger.error("Error during migration", executionException.getCause());
+                logger.error("Error during migration by {}", name, executionException.getCause());
             } catch (TimeoutException e) {
-                logger.error("Error during migration", e);
+                logger.error("Error during migration by {}", name, e);
             } catch (Exception e) {
-                logger.error("Unknown error during migration", e);
+                logger.error("Unknown error during migration by {}", name, e);
             }
         } while (migrationProperties.isContinuous());
-
-        logger.info("Migration completed");
-        SpringApplication.exit(context);
-
-        // Sleep here to wait for H2 database writes to complete and other threads to shut down gracefully...
-        Thread.sleep(2000);
-        System.exit(0);
+        logger.info("{} completed", name);
     }
 }
@@ -0,0 +1,323 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.destination;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Disk-backed map from aggregate identifier to the highest sequence number stored in the destination. Used when
+ * sequence numbers are requested, so aggregates seen earlier in the migration do not have to be looked up again.
+ * Enabled by setting {@code axoniq.migration.sequenceIndexFile}.
+ * <p>
+ * The map is an open addressing hash table in a memory-mapped file, so it lives outside the heap and survives
+ * restarts. Each slot holds a 128-bit hash of the aggregate identifier and the sequence number as primitive longs.
+ * The table doubles in size, into a new file, when it is 70% full.
+ * <p>
+ * The {@link io.axoniq.axonserver.migration.migrators.EventMigrator} only adds sequence numbers once they have been
+ * stored, and records the global index of the last stored event as checkpoint. If the index is behind the
+ * {@link io.axoniq.axonserver.migration.migrators.db.MigrationStatus}, it missed events and is started over. An index
+ * created while the destination was empty is complete: aggregates not in it have no events in the destination yet.
+ * <p>
+ * Changes are written to disk when the index is closed, and every {@link #FLUSH_INTERVAL_MILLIS}. After a crash of the
+ * machine itself, rather than the migration tool, the file should be removed.
+ */
+@Component
+@Slf4j
+public class AggregateSequenceIndex {
+
+    /**
+     * Returned by {@link #get(String)} for aggregates not in the index.
+     */
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+    /**
+     * Returned by {@link #get(String)} for aggregates of which the sequence number is no longer known, see
+     * {@link #forget(String)}.
+     */
+    public static final long UNKNOWN = Long.MIN_VALUE + 1;
+
+    private static final long FLUSH_INTERVAL_MILLIS = 10_000;
+    private static final long MAGIC = 0x4158534551494458L;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4096;
+    private static final int COMPLETE_OFFSET = 12;
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int CHECKPOINT_OFFSET = 32;
+    private static final int SLOT_SIZE = 24;
+    private static final int SEGMENT_SHIFT = 24;
+    private static final long INITIAL_CAPACITY = 1 << 20;
+
+    private final Path path;
+
+    private FileChannel channel;
+    private MappedByteBuffer header;
+    private MappedByteBuffer[] segments;
+    private long capacity;
+    private long size;
+    private boolean complete;
+    private long lastFlush;
+
+    public AggregateSequenceIndex(@Value("${axoniq.migration.sequenceIndexFile:}") String file) {
+        this.path = file.isEmpty() ? null : Paths.get(file);
+    }
+
+    /**
+     * Returns whether a file was configured for the index.
+     */
+    public boolean isEnabled() {
+        return path != null;
+    }
+
+    /**
+     * Returns whether the index is open and can be used.
+     */
+    public synchronized boolean isOpen() {
+        return channel != null;
+    }
+
+    /**
+     * Opens the index, when enabled and not opened before. An existing index is used if it is up to date with the
+     * given checkpoint, and the destination is not empty. Otherwise, a new index is started.
+     *
+     * @param checkpoint       The global index of the last event migrated according to the migration status
+     * @param destinationEmpty Whether the destination does not contain any events yet
+     */
+    public synchronized void open(long checkpoint, boolean destinationEmpty) throws IOException {
+        if (path == null || channel != null) {
+            return;
+        }
+        if (Files.exists(path) && !destinationEmpty) {
+            map(path);
+            long indexCheckpoint = header.getLong(CHECKPOINT_OFFSET);
+            if (indexCheckpoint >= checkpoint) {
+                log.info("Using aggregate sequence index {} with {} aggregates, up to global index {}{}",
+                         path, size, indexCheckpoint, complete ? " (complete)" : "");
+                return;
+            }
+            log.warn("Aggregate sequence index {} is at global index {}, behind the migration at {}. Starting over.",
+                     path, indexCheckpoint, checkpoint);
+            close();
+        }
+        create(path, INITIAL_CAPACITY, destinationEmpty, checkpoint);
+        map(path);
+        log.info("Created aggregate sequence index {}{}", path, complete ? " (complete)" : "");
+    }
+
+    /**
+     * Returns whether every aggregate in the destination is in the index.
+     */
+    public synchronized boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns the highest sequence number of the given aggregate, {@link #NOT_FOUND} if the aggregate is not in the
+     * index, or {@link #UNKNOWN} if it was forgotten.
+     */
+    public synchronized long get(String aggregate) {
+        long hash1 = hash(aggregate, 0x9368e53c2f6af274L);
+        long hash2 = hash(aggregate, 0x586dcd208f7cd3fdL);
+        for (long slot = hash1 & (capacity - 1); ; slot = (slot + 1) & (capacity - 1)) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long slotHash1 = segment.getLong(offset);
+            long slotHash2 = segment.getLong(offset + 8);
+            if (slotHash1 == 0 && slotHash2 == 0) {
+                return NOT_FOUND;
+            }
+            if (slotHash1 == hash1 && slotHash2 == hash2) {
+                return segment.getLong(offset + 16);
+            }
+        }
+    }
+
+    /**
+     * Sets the highest sequence number of the given aggregate.
+     */
+    public synchronized void put(String aggregate, long sequence) throws IOException {
+        if (size + 1 > capacity * 7 / 10) {
+            grow();
+        }
+        long hash1 = hash(aggregate, 0x9368e53c2f6af274L);
+        long hash2 = hash(aggregate, 0x586dcd208f7cd3fdL);
+        if (insert(hash1, hash2, sequence)) {
+            size++;
+            header.putLong(SIZE_OFFSET, size);
+        }
+    }
+
+    /**
+     * Marks the sequence number of the given aggregate as unknown, for events that were stored without the index being
+     * updated. These have to be looked up in the destination again.
+     */
+    public synchronized void forget(String aggregate) throws IOException {
+        put(aggregate, UNKNOWN);
+    }
+
+    /**
+     * Records that the index contains the sequence numbers of all events up to the given global index.
+     */
+    public synchronized void checkpoint(long globalIndex) {
+        header.putLong(CHECKPOINT_OFFSET, globalIndex);
+        long now = System.currentTimeMillis();
+        if (now - lastFlush > FLUSH_INTERVAL_MILLIS) {
+            flush();
+            lastFlush = now;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (channel == null) {
+            return;
+        }
+        flush();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close aggregate sequence index {}", path, e);
+        }
+        channel = null;
+        header = null;
+        segments = null;
+    }
+
+    private void flush() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        header.force();
+    }
+
+    private boolean insert(long hash1, long hash2, long sequence) {
+        for (long slot = hash1 & (capacity - 1); ; slot = (slot + 1) & (capacity - 1)) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long slotHash1 = segment.getLong(offset);
+            long slotHash2 = segment.getLong(offset + 8);
+            boolean empty = slotHash1 == 0 && slotHash2 == 0;
+            if (empty || (slotHash1 == hash1 && slotHash2 == hash2)) {
+                segment.putLong(offset + 16, sequence);
+                segment.putLong(offset + 8, hash2);
+                segment.putLong(offset, hash1);
+                return empty;
+            }
+        }
+    }
+
+    private void grow() throws IOException {
+        Path grown = path.resolveSibling(path.getFileName() + ".grow");
+        long checkpoint = header.getLong(CHECKPOINT_OFFSET);
+        log.info("Growing aggregate sequence index {} to {} slots", path, capacity * 2);
+        AggregateSequenceIndex target = new AggregateSequenceIndex(grown.toString());
+        target.create(grown, capacity * 2, complete, checkpoint);
+        target.map(grown);
+        for (long slot = 0; slot < capacity; slot++) {
+            MappedByteBuffer segment = segment(slot);
+            int offset = offset(slot);
+            long slotHash1 = segment.getLong(offset);
+            long slotHash2 = segment.getLong(offset + 8);
+            if (slotHash1 != 0 || slotHash2 != 0) {
+                target.insert(slotHash1, slotHash2, segment.getLong(offset + 16));
+            }
+        }
+        target.size = size;
+        target.header.putLong(SIZE_OFFSET, size);
+        target.close();
+        close();
+        Files.move(grown, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        map(path);
+    }
+
+    private void create(Path file, long slots, boolean completeIndex, long checkpoint) throws IOException {
+        Files.deleteIfExists(file);
+        try (FileChannel newChannel = FileChannel.open(file,
+                                                       StandardOpenOption.CREATE_NEW,
+                                                       StandardOpenOption.READ,
+                                                       StandardOpenOption.WRITE)) {
+            MappedByteBuffer newHeader = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+            newHeader.putLong(0, MAGIC);
+            newHeader.putInt(8, VERSION);
+            newHeader.putInt(COMPLETE_OFFSET, completeIndex ? 1 : 0);
+            newHeader.putLong(CAPACITY_OFFSET, slots);
+            newHeader.putLong(SIZE_OFFSET, 0);
+            newHeader.putLong(CHECKPOINT_OFFSET, checkpoint);
+            newHeader.force();
+        }
+    }
+
+    private void map(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != VERSION) {
+            channel.close();
+            channel = null;
+            throw new IOException(file + " is not an aggregate sequence index");
+        }
+        complete = header.getInt(COMPLETE_OFFSET) == 1;
+        capacity = header.getLong(CAPACITY_OFFSET);
+        size = header.getLong(SIZE_OFFSET);
+        long segmentSlots = Math.min(capacity, 1L << SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[(int) (capacity / segmentSlots)];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                      HEADER_SIZE + i * segmentSlots * SLOT_SIZE,
+                                      segmentSlots * SLOT_SIZE);
+        }
+        lastFlush = System.currentTimeMillis();
+    }
+
+    private MappedByteBuffer segment(long slot) {
+        return segments[(int) (slot >>> SEGMENT_SHIFT)];
+    }
+
+    private static int offset(long slot) {
+        return (int) (slot & ((1L << SEGMENT_SHIFT) - 1)) * SLOT_SIZE;
+    }
+
+    /**
+     * 64-bit hash of the characters of the identifier, with murmur3 style mixing. Two hashes with different seeds
+     * together identify an aggregate; a zero pair is reserved for empty slots.
+     */
+    private static long hash(String aggregate, long seed) {
+        long h = seed ^ (aggregate.length() * 0xc6a4a7935bd1e995L);
+        for (int i = 0; i < aggregate.length(); i++) {
+            long k = aggregate.charAt(i) * 0x87c37b91114253d5L;
+            k = Long.rotateLeft(k, 31) * 0x4cf5ad432745937fL;
+            h = Long.rotateLeft(h ^ k, 27) * 5 + 0x52dce729;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+}
@@ -19,6 +19,7 @@ package io.axoniq.axonserver.migration.destination;
 import io.axoniq.axonserver.grpc.event.Event;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Strategy that defines how events are stored and sequence numbers are determined.
@@ -35,6 +36,27 @@ public interface EventStoreStrategy {
      */
     void storeEvents(List<Event> events) throws Exception;
 
+    /**
+     * Starts storing the given events, without waiting for them to be stored. Strategies that allow multiple batches to
+     * be in flight must make sure these are committed in the order this method was called, and that a batch fails
+     * when one before it failed.
+     * <p>
+     * Defaults to storing the events using {@link #storeEvents(List)} before returning.
+     *
+     * @param events The events to store.
+     * @return A future completing when the events have been stored
+     */
+    default CompletableFuture<Void> storeEventsAsync(List<Event> events) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            storeEvents(events);
+            result.complete(null);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * Stores the given snapshot.
      *
@@ -42,6 +64,26 @@ public interface EventStoreStrategy {
      */
     void appendSnapshot(Event snapshot) throws Exception;
 
+    /**
+     * Starts storing the given snapshot, without waiting for it to be stored. Multiple snapshots can be in the process
+     * of being stored at once, and may be stored in any order.
+     * <p>
+     * Defaults to storing the snapshot using {@link #appendSnapshot(Event)} before returning.
+     *
+     * @param snapshot The snapshot to store.
+     * @return A future completing when the snapshot has been stored
+     */
+    default CompletableFuture<Void> appendSnapshotAsync(Event snapshot) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            appendSnapshot(snapshot);
+            result.complete(null);
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
     /**
      * Retrieves the last event id stores in the mechanism. Used for determining whether the new batch already contains
      * the event that is last in the storage to prevent double events between exceptional runs.
@@ -65,8 +107,33 @@ public interface EventStoreStrategy {
     }
 
     /**
-     * If local state is kept about the sequence number, the strategy should implement this method to clear the state.
-     * Otherwise we will keep getting out of sequence errors.
+     * Assigns the sequence numbers of a batch of events, in the order of the list. Events without an aggregate are
+     * skipped. Strategies that need to fetch the current sequence of aggregates can do so for the whole batch at once.
+     * <p>
+     * The sequence numbers assigned are staged: they are taken into account for the batches after this one, but only
+     * become definitive once the returned action is run. This happens after the batch has been stored. If storing
+     * fails, {@link #rollback()} is called instead.
+     * <p>
+     * Defaults to calling {@link #getNextSequenceNumber(String, Long)} for each event, returning an action that does
+     * nothing.
+     *
+     * @param events The events to assign the sequence numbers of
+     * @return The action to run once the events have been stored
+     */
+    default Runnable assignSequenceNumbers(List<Event.Builder> events) throws Exception {
+        for (Event.Builder event : events) {
+            if (!event.getAggregateType().isEmpty()) {
+                event.setAggregateSequenceNumber(getNextSequenceNumber(event.getAggregateIdentifier(),
+                                                                       event.getAggregateSequenceNumber()));
+            }
+        }
+        return () -> {
+        };
+    }
+
+    /**
+     * If local state is kept about the sequence number or the batches in flight, the strategy should implement this
+     * method to clear the state. Otherwise we will keep getting out of sequence errors.
      */
     default void rollback() {
 
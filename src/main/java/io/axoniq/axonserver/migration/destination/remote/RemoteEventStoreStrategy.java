@@ -18,29 +18,62 @@ package io.axoniq.axonserver.migration.destination.remote;
 
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.axoniq.axonserver.connector.event.AppendEventsTransaction;
+import io.axoniq.axonserver.connector.event.EventChannel;
 import io.axoniq.axonserver.connector.event.EventStream;
 import io.axoniq.axonserver.grpc.event.Event;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.destination.AggregateSequenceIndex;
 import io.axoniq.axonserver.migration.destination.EventStoreStrategy;
 import org.axonframework.axonserver.connector.AxonServerConnectionManager;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Stores the events in Axon Server.
+ * <p>
+ * When sequence numbers need to be requested, the highest sequence of the aggregates in a batch is looked up at once,
+ * with up to {@link MigrationBaseProperties#getSequencePrefetchConcurrency()} requests at the same time. The sequence
+ * numbers assigned to a batch are staged until it has been stored, and only then added to the cache. Batches converted
+ * in the meantime see the staged sequence numbers of the batches before them.
+ * <p>
+ * When the {@link AggregateSequenceIndex} is enabled, it takes the place of the cache. If it is complete, Axon Server
+ * is never asked for the sequence of an aggregate.
+ */
 @Service
 @ConditionalOnProperty(value = "axoniq.migration.destination", havingValue = "AXONSERVER", matchIfMissing = true)
 public class RemoteEventStoreStrategy implements EventStoreStrategy {
 
     private final AxonServerConnectionManager axonServerConnectionManager;
+    private final MigrationBaseProperties properties;
+    private final AggregateSequenceIndex sequenceIndex;
 
     public RemoteEventStoreStrategy(
-            @Qualifier("destinationAxonServerConnectionManager") AxonServerConnectionManager axonServerConnectionManager) {
+            @Qualifier("destinationAxonServerConnectionManager") AxonServerConnectionManager axonServerConnectionManager,
+            MigrationBaseProperties properties,
+            AggregateSequenceIndex sequenceIndex) {
         this.axonServerConnectionManager = axonServerConnectionManager;
+        this.properties = properties;
+        this.sequenceIndex = sequenceIndex;
     }
 
     private final Cache<String, Long> sequenceCache = Caffeine.newBuilder()
@@ -48,6 +81,10 @@ public class RemoteEventStoreStrategy implements EventStoreStrategy {
             .maximumSize(10000)
             .build();
 
+    private final Deque<Map<String, Long>> stagedSequences = new ArrayDeque<>();
+
+    private CompletableFuture<Void> lastCommit = CompletableFuture.completedFuture(null);
+
     @Override
     public void storeEvents(List<Event> events) throws Exception {
         axonServerConnectionManager.getConnection()
@@ -56,11 +93,50 @@ public class RemoteEventStoreStrategy implements EventStoreStrategy {
                                    .get(30, TimeUnit.SECONDS);
     }
 
+    /**
+     * Streams the events to Axon Server in a new transaction right away, but only commits it once the transaction
+     * started before it has been committed. This keeps the commit order equal to the order of the batches, while the
+     * transfer of the next batches overlaps with the commit of the previous one.
+     */
+    @Override
+    public CompletableFuture<Void> storeEventsAsync(List<Event> events) {
+        AppendEventsTransaction transaction = axonServerConnectionManager.getConnection()
+                                                                         .eventChannel()
+                                                                         .startAppendEventsTransaction();
+        events.forEach(transaction::appendEvent);
+        CompletableFuture<Void> committed = new CompletableFuture<>();
+        lastCommit.whenComplete((previous, previousFailure) -> {
+            if (previousFailure != null) {
+                transaction.rollback();
+                committed.completeExceptionally(
+                        new IllegalStateException("Transaction before this one failed", previousFailure));
+                return;
+            }
+            transaction.commit().whenComplete((confirmation, failure) -> {
+                if (failure != null) {
+                    committed.completeExceptionally(failure);
+                } else {
+                    committed.complete(null);
+                }
+            });
+        });
+        lastCommit = committed;
+        return committed;
+    }
+
     @Override
     public void appendSnapshot(Event snapshot) throws Exception {
         axonServerConnectionManager.getConnection().eventChannel().appendSnapshot(snapshot).get(30, TimeUnit.SECONDS);
     }
 
+    @Override
+    public CompletableFuture<Void> appendSnapshotAsync(Event snapshot) {
+        return axonServerConnectionManager.getConnection()
+                                          .eventChannel()
+                                          .appendSnapshot(snapshot)
+                                          .thenApply(confirmation -> null);
+    }
+
     @Override
     public String getLastEventId() throws Exception {
         Long lastToken = axonServerConnectionManager.getConnection().eventChannel().getLastToken().get();
@@ -87,7 +163,108 @@ public class RemoteEventStoreStrategy implements EventStoreStrategy {
     }
 
     @Override
-    public void rollback() {
-        this.sequenceCache.cleanUp();
+    public Runnable assignSequenceNumbers(List<Event.Builder> events) throws Exception {
+        Set<String> aggregates = new LinkedHashSet<>();
+        for (Event.Builder event : events) {
+            if (!event.getAggregateType().isEmpty()) {
+                aggregates.add(event.getAggregateIdentifier());
+            }
+        }
+        Map<String, Long> highestSequences = new HashMap<>();
+        Set<String> unknown = new LinkedHashSet<>();
+        synchronized (this) {
+            for (String aggregate : aggregates) {
+                Long highest = findKnownHighestSequence(aggregate);
+                if (highest != null) {
+                    highestSequences.put(aggregate, highest);
+                } else {
+                    unknown.add(aggregate);
+                }
+            }
+        }
+        highestSequences.putAll(fetchHighestSequences(unknown));
+
+        Map<String, Long> staged = new LinkedHashMap<>();
+        for (Event.Builder event : events) {
+            if (!event.getAggregateType().isEmpty()) {
+                long next = highestSequences.get(event.getAggregateIdentifier()) + 1;
+                highestSequences.put(event.getAggregateIdentifier(), next);
+                staged.put(event.getAggregateIdentifier(), next);
+                event.setAggregateSequenceNumber(next);
+            }
+        }
+        synchronized (this) {
+            stagedSequences.addLast(staged);
+        }
+        return () -> commitStagedSequences(staged);
+    }
+
+    /**
+     * Returns the highest sequence of the aggregate as staged by a batch not yet stored, or as stored before. Returns
+     * {@code null} if it is not known, and should be fetched from Axon Server.
+     */
+    private Long findKnownHighestSequence(String aggregate) {
+        Iterator<Map<String, Long>> newestFirst = stagedSequences.descendingIterator();
+        while (newestFirst.hasNext()) {
+            Long staged = newestFirst.next().get(aggregate);
+            if (staged != null) {
+                return staged;
+            }
+        }
+        if (!sequenceIndex.isOpen()) {
+            return sequenceCache.getIfPresent(aggregate);
+        }
+        long indexed = sequenceIndex.get(aggregate);
+        if (indexed == AggregateSequenceIndex.NOT_FOUND) {
+            return sequenceIndex.isComplete() ? -1L : null;
+        }
+        return indexed == AggregateSequenceIndex.UNKNOWN ? null : indexed;
+    }
+
+    private Map<String, Long> fetchHighestSequences(Set<String> aggregates) throws Exception {
+        Map<String, Long> highestSequences = new HashMap<>();
+        if (aggregates.isEmpty()) {
+            return highestSequences;
+        }
+        EventChannel eventChannel = axonServerConnectionManager.getConnection().eventChannel();
+        Semaphore permits = new Semaphore(Math.max(1, properties.getSequencePrefetchConcurrency()));
+        Map<String, CompletableFuture<Long>> requests = new LinkedHashMap<>();
+        for (String aggregate : aggregates) {
+            permits.acquire();
+            CompletableFuture<Long> request = eventChannel.findHighestSequence(aggregate);
+            request.whenComplete((result, failure) -> permits.release());
+            requests.put(aggregate, request);
+        }
+        for (Map.Entry<String, CompletableFuture<Long>> request : requests.entrySet()) {
+            Long highest = request.getValue().get(30, TimeUnit.SECONDS);
+            highestSequences.put(request.getKey(), highest == null ? -1L : highest);
+        }
+        return highestSequences;
+    }
+
+    private synchronized void commitStagedSequences(Map<String, Long> staged) {
+        // Batches are stored in order, so this is the oldest staged batch, unless a rollback happened in between
+        if (stagedSequences.peekFirst() != staged) {
+            return;
+        }
+        stagedSequences.pollFirst();
+        if (!sequenceIndex.isOpen()) {
+            sequenceCache.putAll(staged);
+            return;
+        }
+        try {
+            for (Map.Entry<String, Long> sequence : staged.entrySet()) {
+                sequenceIndex.put(sequence.getKey(), sequence.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not update the aggregate sequence index", e);
+        }
+    }
+
+    @Override
+    public synchronized void rollback() {
+        this.lastCommit = CompletableFuture.completedFuture(null);
+        this.stagedSequences.clear();
+        this.sequenceCache.invalidateAll();
     }
 }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+/**
+ * Determines the batch size used by the {@link EventMigrator}. When {@link MigrationBaseProperties#isAdaptiveBatchSize()}
+ * is disabled, this is always {@link MigrationBaseProperties#getBatchSize()}.
+ * <p>
+ * Otherwise, the batch size starts at the configured batch size and is adjusted after each stored batch:
+ * <ul>
+ *     <li>When the serialized batch exceeds {@link MigrationBaseProperties#getTargetBatchBytes()}, it shrinks to the
+ *     size that would have fit.</li>
+ *     <li>When reading or appending the batch took longer than {@link MigrationBaseProperties#getTargetBatchMillis()},
+ *     it shrinks by a quarter.</li>
+ *     <li>When the batch used less than half of both the byte and the time budget, it grows by a quarter.</li>
+ *     <li>When the destination rejected the batch for exceeding its message size, it shrinks to half of it.</li>
+ * </ul>
+ * The batch size always stays between {@link MigrationBaseProperties#getMinBatchSize()} and
+ * {@link MigrationBaseProperties#getMaxBatchSize()}.
+ */
+@Component
+@Slf4j
+public class BatchSizeController {
+
+    private final MigrationBaseProperties properties;
+    private volatile int batchSize;
+
+    public BatchSizeController(MigrationBaseProperties properties) {
+        this.properties = properties;
+        this.batchSize = properties.getBatchSize();
+    }
+
+    /**
+     * Returns the amount of events to read for the next batch.
+     */
+    public int getBatchSize() {
+        return properties.isAdaptiveBatchSize() ? batchSize : properties.getBatchSize();
+    }
+
+    /**
+     * Adjusts the batch size based on the measurements of a stored batch.
+     *
+     * @param eventCount  The amount of events read in the batch
+     * @param readMillis  The time it took to read the batch from the source
+     * @param batchBytes  The serialized size of the converted events
+     * @param appendMillis The time it took to append the events
+     */
+    public synchronized void batchStored(int eventCount, long readMillis, long batchBytes, long appendMillis) {
+        if (!properties.isAdaptiveBatchSize() || eventCount == 0) {
+            return;
+        }
+        long targetBytes = properties.getTargetBatchBytes();
+        long targetMillis = properties.getTargetBatchMillis();
+        long slowest = Math.max(readMillis, appendMillis);
+
+        int newSize;
+        String reason;
+        if (batchBytes > targetBytes) {
+            newSize = (int) Math.max(1, eventCount * targetBytes / batchBytes);
+            reason = String.format("batch of %d events was %d bytes", eventCount, batchBytes);
+        } else if (slowest > targetMillis) {
+            newSize = batchSize - batchSize / 4;
+            reason = String.format("reading took %dms and appending %dms", readMillis, appendMillis);
+        } else if (eventCount >= batchSize && batchBytes < targetBytes / 2 && slowest < targetMillis / 2) {
+            newSize = batchSize + Math.max(1, batchSize / 4);
+            reason = String.format("batch of %d events was %d bytes, reading took %dms and appending %dms",
+                                   eventCount, batchBytes, readMillis, appendMillis);
+        } else {
+            return;
+        }
+
+        adjust(newSize, reason);
+    }
+
+    /**
+     * Shrinks the batch size after the destination rejected a batch for exceeding its message size.
+     *
+     * @param eventCount The amount of events read in the rejected batch
+     * @param batchBytes The serialized size of the converted events
+     */
+    public synchronized void batchRejected(int eventCount, long batchBytes) {
+        if (!properties.isAdaptiveBatchSize() || eventCount == 0) {
+            return;
+        }
+        adjust(Math.max(1, eventCount / 2),
+               String.format("batch of %d events was rejected at %d bytes", eventCount, batchBytes));
+    }
+
+    private void adjust(int newSize, String reason) {
+        newSize = Math.max(properties.getMinBatchSize(), Math.min(properties.getMaxBatchSize(), newSize));
+        if (newSize != batchSize) {
+            log.info("Adjusting batch size from {} to {}, since the last {}", batchSize, newSize, reason);
+            batchSize = newSize;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.grpc.event.Event;
+import io.axoniq.axonserver.migration.source.DomainEvent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A batch of events travelling through the stages of the {@link EventMigrator}. It is read from the source, converted
+ * to Axon Server events and then stored. Next to regular batches, a batch can signal the end of the stream or a
+ * failure in one of the stages before it.
+ */
+final class EventBatch {
+
+    private static final EventBatch END_OF_STREAM = new EventBatch(Collections.emptyList(), -1, 0, null);
+
+    private final List<? extends DomainEvent> sourceEvents;
+    private final long lastToken;
+    private final long readMillis;
+    private final Throwable failure;
+    private List<Event> events = Collections.emptyList();
+    private Runnable sequenceNumbersStored = () -> {
+    };
+    private CompletableFuture<Void> stored;
+    private volatile long storedAt;
+    private volatile long appendMillis;
+
+    private EventBatch(List<? extends DomainEvent> sourceEvents, long lastToken, long readMillis, Throwable failure) {
+        this.sourceEvents = sourceEvents;
+        this.lastToken = lastToken;
+        this.readMillis = readMillis;
+        this.failure = failure;
+    }
+
+    /**
+     * Creates a batch of events read from the source.
+     *
+     * @param sourceEvents The events as read from the source
+     * @param lastToken    The global index of the last event read, to be used as checkpoint once stored
+     * @param readMillis   The time it took to read the events
+     * @return The batch
+     */
+    static EventBatch of(List<? extends DomainEvent> sourceEvents, long lastToken, long readMillis) {
+        return new EventBatch(sourceEvents, lastToken, readMillis, null);
+    }
+
+    /**
+     * Returns the batch signalling that no more events are available for this run.
+     */
+    static EventBatch endOfStream() {
+        return END_OF_STREAM;
+    }
+
+    /**
+     * Creates a batch signalling that a stage failed, which should abort the run.
+     *
+     * @param failure The cause of the failure
+     * @return The batch
+     */
+    static EventBatch failed(Throwable failure) {
+        return new EventBatch(Collections.emptyList(), -1, 0, failure);
+    }
+
+    boolean isEndOfStream() {
+        return this == END_OF_STREAM;
+    }
+
+    boolean isFailed() {
+        return failure != null;
+    }
+
+    Throwable getFailure() {
+        return failure;
+    }
+
+    List<? extends DomainEvent> getSourceEvents() {
+        return sourceEvents;
+    }
+
+    long getLastToken() {
+        return lastToken;
+    }
+
+    long getReadMillis() {
+        return readMillis;
+    }
+
+    List<Event> getEvents() {
+        return events;
+    }
+
+    void setEvents(List<Event> events) {
+        this.events = events;
+    }
+
+    Runnable getSequenceNumbersStored() {
+        return sequenceNumbersStored;
+    }
+
+    void setSequenceNumbersStored(Runnable sequenceNumbersStored) {
+        this.sequenceNumbersStored = sequenceNumbersStored;
+    }
+
+    CompletableFuture<Void> getStored() {
+        return stored;
+    }
+
+    void setStored(CompletableFuture<Void> stored) {
+        this.stored = stored;
+    }
+
+    long getAppendMillis() {
+        return appendMillis;
+    }
+
+    /**
+     * Records that the events have been stored. As a transaction is only committed once the one before it has been,
+     * the time it took to append them is measured from the moment the batch before it was stored, if that is later
+     * than the start.
+     *
+     * @param storeStart The time storing the events started
+     * @param previous   The batch stored before this one, or {@code null} if there was none in flight
+     */
+    void storeCompleted(long storeStart, EventBatch previous) {
+        storedAt = System.currentTimeMillis();
+        long appendStart = previous == null ? storeStart : Math.max(storeStart, previous.storedAt);
+        appendMillis = storedAt - appendStart;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.grpc.event.Event;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.destination.EventStoreStrategy;
+import io.axoniq.axonserver.migration.serialisation.EventSerializer;
+import io.axoniq.axonserver.migration.source.DomainEvent;
+import jakarta.annotation.PreDestroy;
+import org.axonframework.common.AxonThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Converts events of the source into Axon Server {@link Event events}.
+ * <p>
+ * Building the payload, timestamp and metadata of an event is independent of the other events, so this is spread over
+ * {@link MigrationBaseProperties#getConversionThreads()} workers. Each worker converts a contiguous part of the batch,
+ * which are then joined in their original order. Sequence numbers are assigned afterwards for the batch as a whole,
+ * since the {@link EventStoreStrategy} determines these based on the events that came before.
+ * <p>
+ * Events of which the source has the {@link DomainEvent#getAxonServerEvent() Axon Server representation} are passed
+ * through, without converting their payload and metadata.
+ */
+@Component
+public class EventConverter {
+
+    private final MigrationBaseProperties properties;
+    private final EventSerializer eventSerializer;
+    private final EventStoreStrategy eventStoreStrategy;
+    private final ExecutorService workers;
+
+    public EventConverter(MigrationBaseProperties properties,
+                          EventSerializer eventSerializer,
+                          EventStoreStrategy eventStoreStrategy) {
+        this.properties = properties;
+        this.eventSerializer = eventSerializer;
+        this.eventStoreStrategy = eventStoreStrategy;
+        this.workers = properties.getConversionThreads() > 1
+                ? Executors.newFixedThreadPool(properties.getConversionThreads(),
+                                               new AxonThreadFactory("event-conversion"))
+                : null;
+    }
+
+    /**
+     * Converts the source events of the given batch, skipping those of an ignored type. When sequence numbers need to
+     * be requested, the action that makes them definitive is kept with the batch as well.
+     *
+     * @param batch The batch to convert the events of
+     */
+    void convert(EventBatch batch) throws Exception {
+        List<Event.Builder> builders = buildAll(batch.getSourceEvents());
+        builders.removeIf(Objects::isNull);
+        if (properties.shouldRequestSequenceNumbers()) {
+            batch.setSequenceNumbersStored(eventStoreStrategy.assignSequenceNumbers(builders));
+        }
+        List<Event> events = new ArrayList<>(builders.size());
+        for (Event.Builder builder : builders) {
+            events.add(builder.build());
+        }
+        batch.setEvents(events);
+    }
+
+    private List<Event.Builder> buildAll(List<? extends DomainEvent> entries) throws Exception {
+        int threads = properties.getConversionThreads();
+        if (workers == null || entries.size() < threads) {
+            return build(entries);
+        }
+        int chunkSize = (entries.size() + threads - 1) / threads;
+        List<Future<List<Event.Builder>>> chunks = new ArrayList<>(threads);
+        for (int from = 0; from < entries.size(); from += chunkSize) {
+            List<? extends DomainEvent> chunk = entries.subList(from, Math.min(from + chunkSize, entries.size()));
+            chunks.add(workers.submit(() -> build(chunk)));
+        }
+        List<Event.Builder> builders = new ArrayList<>(entries.size());
+        try {
+            for (Future<List<Event.Builder>> chunk : chunks) {
+                builders.addAll(chunk.get());
+            }
+        } finally {
+            chunks.forEach(chunk -> chunk.cancel(true));
+        }
+        return builders;
+    }
+
+    private List<Event.Builder> build(List<? extends DomainEvent> entries) {
+        List<Event.Builder> builders = new ArrayList<>(entries.size());
+        for (DomainEvent entry : entries) {
+            builders.add(isAnIgnoredEventType(entry) ? null : buildEvent(entry));
+        }
+        return builders;
+    }
+
+    private boolean isAnIgnoredEventType(DomainEvent entry) {
+        return properties.getIgnoredEvents().contains(entry.getPayloadType());
+    }
+
+    private Event.Builder buildEvent(DomainEvent entry) {
+        Event event = entry.getAxonServerEvent();
+        if (event != null) {
+            return event.toBuilder();
+        }
+        Event.Builder eventBuilder = Event.newBuilder()
+                                          .setPayload(eventSerializer.toPayload(entry))
+                                          .setMessageIdentifier(entry.getEventIdentifier());
+
+        if (entry.getType() != null) {
+            eventBuilder.setAggregateType(entry.getType())
+                        .setAggregateSequenceNumber(entry.getSequenceNumber())
+                        .setAggregateIdentifier(entry.getAggregateIdentifier());
+        }
+
+        eventBuilder.setTimestamp(entry.getTimeStampAsLong());
+        eventSerializer.convertMetadata(entry, eventBuilder);
+        return eventBuilder;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+}
@@ -18,30 +18,61 @@ package io.axoniq.axonserver.migration.migrators;
 
 import io.axoniq.axonserver.grpc.event.Event;
 import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.destination.AggregateSequenceIndex;
 import io.axoniq.axonserver.migration.destination.EventStoreStrategy;
+import io.axoniq.axonserver.migration.migrators.checkpoint.CheckpointStore;
 import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
-import io.axoniq.axonserver.migration.migrators.db.MigrationStatusRepository;
-import io.axoniq.axonserver.migration.serialisation.EventSerializer;
 import io.axoniq.axonserver.migration.source.DomainEvent;
+import io.axoniq.axonserver.migration.source.EventPosition;
 import io.axoniq.axonserver.migration.source.EventProducer;
+import io.grpc.Status;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.AxonThreadFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 
-import java.util.Comparator;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
  * Migrates the events from an {@link EventProducer} to an {@link EventStoreStrategy} depending on the configuration.
  * <p>
- * Will evaluate on the first run whether the previous run completed a batch only partially to prevent double events.
- * Will stop evaluation when it hits a gaps during a recent period (by default 10 seconds). This means we've reached the
- * end of the event store, and we cannot guaranty the global index ordering, due to the commit order in the database
- * being different (or transactions not being completed yet)
+ * Will evaluate on the first run whether the previous run stored events after its last saved checkpoint, to prevent
+ * double events. With {@link MigrationBaseProperties#getMaxInFlightTransactions()} batches in flight, that can be up to
+ * as many batches.
+ * Will hold back events when it hits a gap during a recent period (by default 10 seconds). This means we've reached
+ * the end of the event store, and we cannot guaranty the global index ordering, due to the commit order in the database
+ * being different (or transactions not being completed yet). The {@link GapTracker} keeps the events after the gap,
+ * and the missing events are queried again every {@link MigrationBaseProperties#getGapRetryMillis()}. The run stops
+ * when the gap is still open after {@link MigrationBaseProperties#getGapWaitMillis()}. Sources of which the global
+ * indexes are not a sequence, see {@link EventProducer#hasSequentialGlobalIndexes()}, are not checked for gaps.
+ * <p>
+ * Reading, converting and storing run as separate stages connected by bounded queues of
+ * {@link MigrationBaseProperties#getPipelineQueueSize()} batches. This way the next batch is read while the current one
+ * is converted and the previous one is stored. The {@link MigrationStatus} only advances once a batch has been stored.
+ * When storing fails, the batches read ahead are dropped, and the next run reads them again from the checkpoint.
+ * If the {@link EventStoreStrategy} supports it, multiple batches can be in the process of being stored at once.
+ * Reads and transactions are taken from the {@link MigrationBudget} shared with the other migrators. Connections the
+ * source keeps open between reads, see {@link EventProducer#getOpenConnections()}, stay taken until it closes them.
+ * <p>
+ * In continuous mode, a single run keeps tailing the source, so its state stays in memory. The source is polled again
+ * right away after a full batch, and after {@link MigrationBaseProperties#getTailPollMinMillis()} after a partial one.
+ * When nothing is found, the interval doubles up to {@link MigrationBaseProperties#getTailPollMaxMillis()}.
  *
  * @author Marc Gathier
  * @author Mitchell Herrijgers
@@ -52,153 +83,441 @@ import java.util.stream.Collectors;
 @ConditionalOnProperty(value = "axoniq.migration.migrateEvents", havingValue = "true", matchIfMissing = true)
 public class EventMigrator implements Migrator {
 
+    private static final int MAX_MISSING_INDEXES_PER_QUERY = 1000;
+
     private final MigrationBaseProperties properties;
     private final EventProducer eventProducer;
-    private final EventSerializer eventSerializer;
-    private final MigrationStatusRepository migrationStatusRepository;
+    private final EventConverter eventConverter;
+    private final CheckpointStore checkpointStore;
     private final EventStoreStrategy eventStoreStrategy;
     private final EventMigratorStatisticsReporter reporter;
+    private final BatchSizeController batchSizeController;
+    private final GapTracker gapTracker;
+    private final AggregateSequenceIndex sequenceIndex;
+    private final MigrationBudget budget;
 
     public void migrate() throws Exception {
-        MigrationStatus migrationStatus = migrationStatusRepository.findById(1L).orElse(new MigrationStatus());
+        MigrationStatus migrationStatus = checkpointStore.load();
 
         long lastProcessedToken = migrationStatus.getLastEventGlobalIndex();
         reporter.initialize(lastProcessedToken);
 
         String lastEventId = eventStoreStrategy.getLastEventId();
-        boolean isFirstRun = true;
+        if (properties.shouldRequestSequenceNumbers()) {
+            sequenceIndex.open(lastProcessedToken, lastEventId == null);
+        }
 
-        while (true) {
-            List<? extends DomainEvent> result = eventProducer.findEvents(lastProcessedToken,
-                                                                          properties.getBatchSize());
-            if (result.isEmpty()) {
-                log.info("No more events found");
-                return;
-            }
+        BlockingQueue<EventBatch> readBatches = new ArrayBlockingQueue<>(properties.getPipelineQueueSize());
+        BlockingQueue<EventBatch> convertedBatches = new ArrayBlockingQueue<>(properties.getPipelineQueueSize());
+        ExecutorService stages = Executors.newFixedThreadPool(2, new AxonThreadFactory("event-migration"));
+        try {
+            stages.execute(() -> readEvents(migrationStatus.getEventPosition(), lastEventId, readBatches));
+            stages.execute(() -> convertEvents(readBatches, convertedBatches));
+            storeBatches(convertedBatches);
+        } catch (Exception exception) {
+            // Stop the stages before clearing any cache on the sequence numbers, it's unreliable now.
+            stopStages(stages);
+            eventStoreStrategy.rollback();
+            throw exception;
+        } finally {
+            stopStages(stages);
+        }
+    }
 
-            // Check if part of the previous batch was written. This can happen during a kill of the tool, with the H2 database not updating correctly
-            if (isFirstRun && lastEventId != null) {
-                Optional<? extends DomainEvent> matchingEventOptional = result.stream()
-                                                                              .filter(e -> Objects.equals(e.getEventIdentifier(),
-                                                                                                          lastEventId))
-                                                                              .findFirst();
-                if (matchingEventOptional.isPresent()) {
-                    DomainEvent matchingEvent = matchingEventOptional.get();
-                    int index = result.indexOf(matchingEvent);
-                    log.info(
-                            "Detected partially written batch because event id {}, found at index {}, was already written last time. Filtering the events to correct. ",
-                            lastEventId,
-                            index);
-                    result = result.subList(index + 1, result.size());
+    /**
+     * Reading stage. Reads batches from the {@link EventProducer} until no more events are found, or a recent gap is
+     * not filled in time. In continuous mode, the stage keeps tailing the source instead of ending when no more events
+     * are found.
+     */
+    private void readEvents(EventPosition position, String lastEventId, BlockingQueue<EventBatch> output) {
+        MigrationBudget.SourceLease lease = budget.sourceLease();
+        try {
+            Deque<List<? extends DomainEvent>> readAhead = new ArrayDeque<>();
+            if (lastEventId != null) {
+                position = skipWrittenEvents(position, lastEventId, readAhead, lease);
+            }
+            Linger linger = new Linger();
+            long pollMillis = properties.getTailPollMinMillis();
+            while (true) {
+                long readStart = System.currentTimeMillis();
+                boolean waitingForGap = gapTracker.hasOpenGaps();
+                EventPosition readAfter = position;
+                List<? extends DomainEvent> result;
+                if (waitingForGap) {
+                    result = read(lease, 1, () -> findMissingEvents(readAfter));
+                } else if (!readAhead.isEmpty()) {
+                    result = readAhead.poll();
+                } else {
+                    result = read(lease,
+                                  eventProducer.getReadConnections(),
+                                  () -> eventProducer.findEvents(readAfter, batchSizeController.getBatchSize()));
                 }
-                isFirstRun = false;
-                if(result.isEmpty()) {
+                long readMillis = System.currentTimeMillis() - readStart;
+                if (result.isEmpty() && !waitingForGap) {
+                    if (!properties.isContinuous()) {
+                        log.info("No more events found");
+                        output.put(EventBatch.endOfStream());
+                        return;
+                    }
+                    if (linger.isExpired()) {
+                        linger.flush(output);
+                    }
+                    Thread.sleep(Math.min(pollMillis, linger.getRemainingMillis()));
+                    pollMillis = Math.min(pollMillis * 2, properties.getTailPollMaxMillis());
                     continue;
                 }
+
+                List<DomainEvent> released = eventProducer.hasSequentialGlobalIndexes()
+                        ? gapTracker.track(position.getGlobalIndex(), result)
+                        : new ArrayList<>(result);
+                if (!released.isEmpty()) {
+                    DomainEvent lastReleased = released.get(released.size() - 1);
+                    position = EventPosition.of(lastReleased.getGlobalIndex(), lastReleased);
+                    linger.add(released, position.getGlobalIndex(), readMillis);
+                }
+                boolean fullBatch = result.size() >= batchSizeController.getBatchSize();
+                if (fullBatch || !properties.isContinuous() || linger.isExpired()) {
+                    linger.flush(output);
+                }
+                if (gapTracker.hasOpenGaps()) {
+                    if (gapTracker.getOldestGapAgeMillis() >= properties.getGapWaitMillis()) {
+                        log.error("Missing events at: {}. Waited {} ms for them to appear.",
+                                  Arrays.toString(gapTracker.getMissingIndexes(10)),
+                                  gapTracker.getOldestGapAgeMillis());
+                        log.error(
+                                "This indicates that there is a gap in the database which occurred recently. Since we cannot guarantee data ordering, we are stopping the migration.");
+                        linger.flush(output);
+                        output.put(EventBatch.endOfStream());
+                        return;
+                    }
+                    Thread.sleep(properties.getGapRetryMillis());
+                } else if (properties.isContinuous()) {
+                    // Caught up when the batch was not full: poll again soon, as more events are likely to follow
+                    pollMillis = properties.getTailPollMinMillis();
+                    if (!fullBatch) {
+                        Thread.sleep(Math.min(pollMillis, linger.getRemainingMillis()));
+                    }
+                }
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            handOverFailure(output, e);
+        } finally {
+            lease.close();
+        }
+    }
 
-            if (recentGapIsPresent(lastProcessedToken, result)) {
-                return;
+    /**
+     * Reads from the source, holding the given amount of connections during the read. Afterwards, the lease keeps
+     * holding the connections the source still has open, so readers reading ahead count against the budget.
+     */
+    private <T> T read(MigrationBudget.SourceLease lease, int connections, Supplier<T> read)
+            throws InterruptedException {
+        lease.hold(Math.max(connections, eventProducer.getOpenConnections()));
+        try {
+            return read.get();
+        } finally {
+            lease.hold(eventProducer.getOpenConnections());
+        }
+    }
+
+    /**
+     * Checks whether events after the last saved checkpoint were written already. This can happen during a kill of the
+     * tool, when batches were stored but the checkpoint was not saved yet. Up to
+     * {@link MigrationBaseProperties#getMaxInFlightTransactions()} batches are read ahead, looking for the last event of
+     * the destination. As transactions are committed in order, all events up to and including that one were written.
+     * <p>
+     * The events read after those are kept in the given deque, in batches of the current batch size, to be migrated
+     * before reading further, instead of reading them again.
+     *
+     * @return The position of the last event written, or the given one if none of the events read ahead were
+     */
+    private EventPosition skipWrittenEvents(EventPosition position,
+                                            String lastEventId,
+                                            Deque<List<? extends DomainEvent>> readAhead,
+                                            MigrationBudget.SourceLease lease) throws Exception {
+        int maxBatchSize = properties.isAdaptiveBatchSize()
+                ? Math.max(properties.getBatchSize(), properties.getMaxBatchSize())
+                : properties.getBatchSize();
+        long maxEvents = (long) properties.getMaxInFlightTransactions() * maxBatchSize;
+        List<DomainEvent> events = new ArrayList<>();
+        int written = -1;
+        EventPosition readAfter = position;
+        while (written < 0 && events.size() < maxEvents) {
+            EventPosition after = readAfter;
+            List<? extends DomainEvent> result = read(
+                    lease,
+                    eventProducer.getReadConnections(),
+                    () -> eventProducer.findEvents(after, batchSizeController.getBatchSize()));
+            if (result.isEmpty()) {
+                break;
+            }
+            for (int i = 0; i < result.size() && written < 0; i++) {
+                if (Objects.equals(result.get(i).getEventIdentifier(), lastEventId)) {
+                    written = events.size() + i;
+                }
             }
+            events.addAll(result);
+            DomainEvent last = result.get(result.size() - 1);
+            readAfter = EventPosition.of(last.getGlobalIndex(), last);
+        }
+
+        EventPosition lastWritten = position;
+        if (written >= 0) {
+            log.info("Detected {} events already written after the last checkpoint, up to event id {}. Skipping them.",
+                     written + 1, lastEventId);
+            DomainEvent lastWrittenEvent = events.get(written);
+            lastWritten = EventPosition.of(lastWrittenEvent.getGlobalIndex(), lastWrittenEvent);
+            forgetSequences(events.subList(0, written + 1));
+        }
+        int batchSize = batchSizeController.getBatchSize();
+        for (int from = written + 1; from < events.size(); from += batchSize) {
+            readAhead.add(events.subList(from, Math.min(from + batchSize, events.size())));
+        }
+        return lastWritten;
+    }
+
+    /**
+     * Events released by the reading stage, but not yet handed over to the next stage. While tailing, events trickle
+     * in a few at a time. Holding them for up to {@link MigrationBaseProperties#getLingerMillis()} stores them in fewer,
+     * larger transactions.
+     */
+    private class Linger {
 
-            DomainEvent lastEntry = result.get(result.size() - 1);
-            lastProcessedToken = lastEntry.getGlobalIndex();
+        private final List<DomainEvent> events = new ArrayList<>();
+        private long lastToken;
+        private long readMillis;
+        private long since;
 
-            List<Event> events = result
-                    .stream()
-                    .map(e -> {
-                        try {
-                            return buildEvent(e);
-                        } catch (Exception ex) {
-                            throw new RuntimeException(ex);
-                        }
-                    })
-                    .filter(Objects::nonNull)
-                    .collect(Collectors.toList());
+        private void add(List<DomainEvent> released, long lastToken, long readMillis) {
+            if (events.isEmpty()) {
+                since = System.currentTimeMillis();
+            }
+            events.addAll(released);
+            this.lastToken = lastToken;
+            this.readMillis += readMillis;
+        }
 
-            storeEvents(events);
+        private boolean isExpired() {
+            return events.size() >= batchSizeController.getBatchSize()
+                    || System.currentTimeMillis() - since >= properties.getLingerMillis();
+        }
+
+        /**
+         * Returns how long the events can still be held, or {@link Long#MAX_VALUE} when none are held.
+         */
+        private long getRemainingMillis() {
+            if (events.isEmpty()) {
+                return Long.MAX_VALUE;
+            }
+            return Math.max(0, since + properties.getLingerMillis() - System.currentTimeMillis());
+        }
 
-            migrationStatus.setLastEventGlobalIndex(lastProcessedToken);
-            migrationStatusRepository.save(migrationStatus);
-            reporter.reportBatchSaved(lastProcessedToken, result.size(), events.size());
+        private void flush(BlockingQueue<EventBatch> output) throws InterruptedException {
+            if (events.isEmpty()) {
+                return;
+            }
+            output.put(EventBatch.of(new ArrayList<>(events), lastToken, readMillis));
+            events.clear();
+            readMillis = 0;
         }
     }
 
     /**
-     * Validate the result list and check for gaps. If there is a gap, and the event is recent, it can indicate that a
-     * row has already been written to the database but not committed yet. This run should be aborted
+     * Conversion stage. Turns the source events of each batch into Axon Server events using the
+     * {@link EventConverter}, in order.
      */
-    private boolean recentGapIsPresent(long lastProcessedToken, List<? extends DomainEvent> result) {
-        List<Long> recentGlobalIndexes = result.stream().filter(this::isRecentEvent)
-                                               .map(DomainEvent::getGlobalIndex)
-                                               .collect(Collectors.toList());
-        long maxNonRecentEvent = result.stream().filter(s -> !isRecentEvent(s))
-                                       .map(DomainEvent::getGlobalIndex)
-                                       .max(Comparator.naturalOrder())
-                                       .orElse(lastProcessedToken);
-        for (int i = 1; i <= recentGlobalIndexes.size(); i++) {
-            if (!recentGlobalIndexes.contains(maxNonRecentEvent + i)) {
-                log.error("Missing event at: {}. Found global indexes in batch: {}",
-                          (maxNonRecentEvent + i),
-                          recentGlobalIndexes);
-                log.error(
-                        "This indicates that there is a gap in the database which occurred recently. Since we cannot guarantee data ordering, we are stopping the migration.");
-                return true;
+    private void convertEvents(BlockingQueue<EventBatch> input, BlockingQueue<EventBatch> output) {
+        try {
+            while (true) {
+                EventBatch batch = input.take();
+                if (batch.isEndOfStream() || batch.isFailed()) {
+                    output.put(batch);
+                    return;
+                }
+                eventConverter.convert(batch);
+                output.put(batch);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            handOverFailure(output, e);
         }
-        return false;
     }
 
-    private boolean isAnIgnoredEventType(DomainEvent entry) {
-        return properties.getIgnoredEvents().contains(entry.getPayloadType());
+    /**
+     * Storing stage, running on the calling thread. Starts storing each converted batch, keeping up to
+     * {@link MigrationBaseProperties#getMaxInFlightTransactions()} batches in flight. The {@link MigrationStatus} is
+     * advanced in batch order, and only past batches of which all predecessors have been stored as well.
+     */
+    private void storeBatches(BlockingQueue<EventBatch> input) throws Exception {
+        Deque<EventBatch> inFlight = new ArrayDeque<>();
+        try {
+            while (true) {
+                // While tailing, the next batch can take long to arrive. Don't hold back the progress of those in flight.
+                EventBatch batch = inFlight.isEmpty() ? input.take() : input.poll(10, TimeUnit.MILLISECONDS);
+                if (batch == null) {
+                    completeStored(inFlight);
+                    continue;
+                }
+                if (batch.isFailed()) {
+                    throw new ExecutionException("Failed to read or convert events", batch.getFailure());
+                }
+                if (batch.isEndOfStream()) {
+                    break;
+                }
+                while (inFlight.size() >= properties.getMaxInFlightTransactions()) {
+                    completeOldest(inFlight);
+                }
+                EventBatch previous = inFlight.peekLast();
+                batch.setStored(budget.store(() -> {
+                    long storeStart = System.currentTimeMillis();
+                    return storeEvents(batch.getEvents()).thenRun(() -> batch.storeCompleted(storeStart, previous));
+                }));
+                inFlight.add(batch);
+                completeStored(inFlight);
+            }
+            while (!inFlight.isEmpty()) {
+                completeOldest(inFlight);
+            }
+        } catch (Exception exception) {
+            drainInFlight(inFlight);
+            throw exception;
+        }
+    }
+
+    /**
+     * Completes the batches in flight that have been stored, up to the first one still being stored.
+     */
+    private void completeStored(Deque<EventBatch> inFlight) throws Exception {
+        while (!inFlight.isEmpty() && inFlight.peek().getStored().isDone()) {
+            completeOldest(inFlight);
+        }
     }
 
-    private Event buildEvent(final DomainEvent entry) throws Exception {
-        if (isAnIgnoredEventType(entry)) {
-            return null;
+    private void completeOldest(Deque<EventBatch> inFlight) throws Exception {
+        EventBatch batch = inFlight.poll();
+        try {
+            batch.getStored().get(30, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (Status.fromThrowable(e.getCause()).getCode() == Status.Code.RESOURCE_EXHAUSTED) {
+                // Rejected for exceeding the message size of the destination. Those after it failed along with it.
+                batchSizeController.batchRejected(batch.getSourceEvents().size(), batchBytes(batch));
+            }
+            throw e;
         }
-        Event.Builder eventBuilder = Event.newBuilder()
-                                          .setPayload(eventSerializer.toPayload(entry))
-                                          .setMessageIdentifier(entry.getEventIdentifier());
+        saveProgress(batch);
+    }
 
-        if (entry.getType() != null) {
-            String aggregateIdentifier = entry.getAggregateIdentifier();
-            long nextSequenceNumber = properties.shouldRequestSequenceNumbers() ? entry.getSequenceNumber()
-                    : eventStoreStrategy.getNextSequenceNumber(aggregateIdentifier, entry.getSequenceNumber());
-            eventBuilder.setAggregateType(entry.getType())
-                        .setAggregateSequenceNumber(nextSequenceNumber)
-                        .setAggregateIdentifier(aggregateIdentifier);
+    /**
+     * Waits for all batches still in flight after a failure, so the {@link MigrationStatus} reflects exactly what has
+     * been stored. Batches after the first failed one are not taken into account.
+     */
+    private void drainInFlight(Deque<EventBatch> inFlight) {
+        boolean failed = false;
+        while (!inFlight.isEmpty()) {
+            EventBatch batch = inFlight.poll();
+            try {
+                batch.getStored().get(30, TimeUnit.SECONDS);
+                if (!failed) {
+                    saveProgress(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                failed = true;
+            }
         }
+    }
 
-        eventBuilder.setTimestamp(entry.getTimeStampAsLong());
-        eventSerializer.convertMetadata(entry.getMetaData(), eventBuilder);
-        return eventBuilder.build();
+    private void saveProgress(EventBatch batch) {
+        batch.getSequenceNumbersStored().run();
+        if (sequenceIndex.isOpen()) {
+            sequenceIndex.checkpoint(batch.getLastToken());
+        }
+        List<? extends DomainEvent> sourceEvents = batch.getSourceEvents();
+        DomainEvent lastSourceEvent = sourceEvents.isEmpty() ? null : sourceEvents.get(sourceEvents.size() - 1);
+        checkpointStore.saveEventPosition(EventPosition.of(batch.getLastToken(), lastSourceEvent));
+        reporter.reportBatchSaved(batch.getLastToken(), batch.getSourceEvents().size(), batch.getEvents().size());
+        if (!batch.getSourceEvents().isEmpty()) {
+            DomainEvent lastEvent = batch.getSourceEvents().get(batch.getSourceEvents().size() - 1);
+            reporter.reportReplicationLag(System.currentTimeMillis() - lastEvent.getTimeStampAsLong());
+        }
+        batchSizeController.batchStored(batch.getSourceEvents().size(),
+                                        batch.getReadMillis(),
+                                        batchBytes(batch),
+                                        batch.getAppendMillis());
     }
 
-    private void storeEvents(List<Event> events) throws Exception {
-        if (events.isEmpty()) {
+    private static long batchBytes(EventBatch batch) {
+        return batch.getEvents().stream().mapToLong(Event::getSerializedSize).sum();
+    }
+
+    /**
+     * The sequence numbers assigned to events written in a previous run, without the migration status being updated,
+     * did not make it into the {@link AggregateSequenceIndex}. These need to be looked up again.
+     */
+    private void forgetSequences(List<? extends DomainEvent> alreadyWritten) throws IOException {
+        if (!sequenceIndex.isOpen()) {
             return;
         }
-        if (log.isDebugEnabled()) {
-            log.debug("Storing {} events", events.size());
+        for (DomainEvent event : alreadyWritten) {
+            if (event.getType() != null) {
+                sequenceIndex.forget(event.getAggregateIdentifier());
+            }
         }
+    }
 
+    private void handOverFailure(BlockingQueue<EventBatch> output, Exception failure) {
+        // The next stage drains its input until it sees this. If it failed itself, we are interrupted instead.
         try {
-            eventStoreStrategy.storeEvents(events);
-        } catch (Exception exception) {
-            List<String> structure = events.stream()
-                                           .map(e -> String.format("%s___%d",
-                                                                   e.getAggregateIdentifier(),
-                                                                   e.getAggregateSequenceNumber()))
-                                           .collect(Collectors.toList());
-            log.error("Exception while storing. The event list has the following structure: {}", structure);
-            // Clear any cache on the sequence numbers, it's unreliable now.
-            eventStoreStrategy.rollback();
-            throw exception;
+            output.put(EventBatch.failed(failure));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void stopStages(ExecutorService stages) throws InterruptedException {
+        stages.shutdownNow();
+        if (!stages.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Migration stages did not stop within 30 seconds");
         }
     }
 
-    private boolean isRecentEvent(DomainEvent entry) {
-        return entry.getTimeStampAsLong() > System.currentTimeMillis() - properties.getRecentMillis();
+    /**
+     * Queries the events missing in the open gaps. Sources that cannot look up events by global index are read again
+     * from the last processed event instead.
+     */
+    private List<? extends DomainEvent> findMissingEvents(EventPosition position) {
+        List<? extends DomainEvent> result = eventProducer.findEventsByGlobalIndexes(
+                gapTracker.getMissingIndexes(MAX_MISSING_INDEXES_PER_QUERY));
+        if (result == null) {
+            return eventProducer.findEvents(position, batchSizeController.getBatchSize());
+        }
+        return result;
+    }
+
+    private CompletableFuture<Void> storeEvents(List<Event> events) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Storing {} events", events.size());
+        }
+
+        CompletableFuture<Void> stored = eventStoreStrategy.storeEventsAsync(events);
+        stored.whenComplete((result, exception) -> {
+            if (exception != null) {
+                List<String> structure = events.stream()
+                                               .map(e -> String.format("%s___%d",
+                                                                       e.getAggregateIdentifier(),
+                                                                       e.getAggregateSequenceNumber()))
+                                               .collect(Collectors.toList());
+                log.error("Exception while storing. The event list has the following structure: {}", structure);
+            }
+        });
+        return stored;
     }
 }
@@ -16,28 +16,38 @@
 
 package io.axoniq.axonserver.migration.migrators;
 
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.serialisation.EventSerializer;
 import io.axoniq.axonserver.migration.source.EventProducer;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Reports statistics about the progress of the current run. It logs the current index, amount of events remaining and
- * the estimated time until completion every 5 seconds.
+ * the estimated time until completion every 5 seconds, together with the statistics of the metadata conversions.
+ * <p>
+ * The replication lag of the last stored event is registered as the {@code axoniq.migration.replication.lag}
+ * gauge, and logged as well while tailing the source in continuous mode.
  * <p>
  * Will not run in case the {@link EventProducer} does not support the required {@link EventProducer#getMinIndex()} and
  * {@link EventProducer#getMaxIndex()} methods.
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class EventMigratorStatisticsReporter {
 
+    private final MigrationBaseProperties properties;
     private final EventProducer eventProducer;
+    private final EventSerializer eventSerializer;
+    private final GapTracker gapTracker;
+    private final AtomicLong replicationLag = new AtomicLong(-1);
     private boolean enabled = true;
     private long startToken = 0;
     private long lastProcessedToken = 0;
@@ -47,6 +57,21 @@ public class EventMigratorStatisticsReporter {
     private long minGlobalIndex;
     private long maxGlobalIndex;
 
+    public EventMigratorStatisticsReporter(MigrationBaseProperties properties,
+                                           EventProducer eventProducer,
+                                           EventSerializer eventSerializer,
+                                           GapTracker gapTracker,
+                                           MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.eventProducer = eventProducer;
+        this.eventSerializer = eventSerializer;
+        this.gapTracker = gapTracker;
+        Gauge.builder("axoniq.migration.replication.lag", replicationLag, AtomicLong::get)
+             .description("Time between the last stored event being written to the source and it being stored")
+             .baseUnit("milliseconds")
+             .register(meterRegistry);
+    }
+
     public void initialize(long lastProcessedToken) {
         this.minGlobalIndex = eventProducer.getMinIndex();
         this.maxGlobalIndex = eventProducer.getMaxIndex();
@@ -73,8 +98,19 @@ public class EventMigratorStatisticsReporter {
         this.lastProcessedToken = lastProcessedToken;
     }
 
+    /**
+     * Reports the time between the last event stored being written to the source, and it being stored in the
+     * destination.
+     */
+    public void reportReplicationLag(long lagMillis) {
+        replicationLag.set(Math.max(0, lagMillis));
+    }
+
     @Scheduled(fixedRate = 5000, initialDelay = 1000)
     public void report() {
+        if (properties.isContinuous() && replicationLag.get() >= 0) {
+            log.info("Replication lag: {} ms", replicationLag.get());
+        }
         if (!enabled || this.timeStarted == null) {
             return;
         }
@@ -87,6 +123,12 @@ public class EventMigratorStatisticsReporter {
                 numberSkipped,
                 numberStored,
                 percentage(numberSkipped, numberSkipped + numberStored));
+        log.info("Metadata conversions - {}", eventSerializer.getMetadataStatistics());
+        if (gapTracker.hasOpenGaps()) {
+            log.info("Open gaps: {}, oldest waiting for {} ms",
+                     gapTracker.getOpenGapCount(),
+                     gapTracker.getOldestGapAgeMillis());
+        }
         long secondsSinceStart = ChronoUnit.SECONDS.between(this.timeStarted, Instant.now());
         if(secondsSinceStart < 1) {
             return;
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.source.DomainEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps track of gaps in the global indexes of the events read by the {@link EventMigrator}, holding back the events
+ * after a gap until it is either filled or can be considered permanent.
+ * <p>
+ * A gap followed by a recent event may be an event of which the transaction has not been committed yet. Migrating the
+ * events after it could then change their order. A gap followed by an event older than
+ * {@link MigrationBaseProperties#getRecentMillis()} is considered permanent, for example a rolled back transaction.
+ * <p>
+ * Which global indexes after the last released event have been read is kept in a {@link BitSet}, together with the
+ * events read after the first open gap. This state is kept between batches and between runs of the migration, so gaps
+ * keep their age while they are being waited for.
+ * <p>
+ * At most {@code 2^20} global indexes after the last released event are tracked. Events further ahead are read again
+ * once the events before them are released. When nothing is held, the next event being that far ahead means the
+ * indexes before it are not going to be used, as on a first run of a store not starting at 0. The tracked window then
+ * moves to that event.
+ * <p>
+ * Sources of which the global indexes are not a sequence, like the timestamps used for Mongo, are not tracked at all,
+ * see {@link io.axoniq.axonserver.migration.source.EventProducer#hasSequentialGlobalIndexes()}.
+ */
+@Component
+@Slf4j
+public class GapTracker {
+
+    private static final int MAX_WINDOW = 1 << 20;
+
+    private final MigrationBaseProperties properties;
+
+    private long position = Long.MIN_VALUE;
+    private BitSet present = new BitSet();
+    private long[] missingSince = new long[0];
+    private List<DomainEvent> held = new ArrayList<>();
+    private int openGaps;
+    private long oldestGapSince;
+
+    public GapTracker(MigrationBaseProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Adds the given events to the events read so far, and returns the events that can be migrated. These are the
+     * events up to the first gap followed by recent events only, in global index order.
+     *
+     * @param lastProcessedToken The global index of the last event handed to the migration
+     * @param events             The events read from the source, in any order
+     * @return The events that can be migrated
+     */
+    public synchronized List<DomainEvent> track(long lastProcessedToken, List<? extends DomainEvent> events) {
+        if (position != lastProcessedToken) {
+            reset(lastProcessedToken);
+        }
+        List<DomainEvent> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparingLong(DomainEvent::getGlobalIndex));
+        for (DomainEvent event : sorted) {
+            long offset = event.getGlobalIndex() - position - 1;
+            if (offset >= MAX_WINDOW && held.isEmpty()) {
+                log.info("No events between global index {} and {}. Continuing from there.",
+                         position, event.getGlobalIndex());
+                reset(event.getGlobalIndex() - 1);
+                offset = 0;
+            }
+            // Events already released, or too far ahead to hold, will be read again
+            if (offset < 0 || offset >= MAX_WINDOW || present.get((int) offset)) {
+                continue;
+            }
+            present.set((int) offset);
+            held.add(event);
+        }
+        held.sort(Comparator.comparingLong(DomainEvent::getGlobalIndex));
+
+        long now = System.currentTimeMillis();
+        long recentThreshold = now - properties.getRecentMillis();
+        int releaseCount = 0;
+        for (int i = held.size() - 1; i >= 0; i--) {
+            if (held.get(i).getTimeStampAsLong() <= recentThreshold) {
+                releaseCount = i + 1;
+                break;
+            }
+        }
+        long expected = releaseCount == 0 ? position + 1 : held.get(releaseCount - 1).getGlobalIndex() + 1;
+        while (releaseCount < held.size() && held.get(releaseCount).getGlobalIndex() == expected) {
+            releaseCount++;
+            expected++;
+        }
+
+        List<DomainEvent> released = Collections.emptyList();
+        if (releaseCount > 0) {
+            released = new ArrayList<>(held.subList(0, releaseCount));
+            held = new ArrayList<>(held.subList(releaseCount, held.size()));
+            advance(released.get(releaseCount - 1).getGlobalIndex());
+        }
+        updateGaps(now);
+        return released;
+    }
+
+    private void reset(long lastProcessedToken) {
+        position = lastProcessedToken;
+        present = new BitSet();
+        missingSince = new long[0];
+        held = new ArrayList<>();
+        openGaps = 0;
+    }
+
+    private void advance(long newPosition) {
+        int shift = (int) (newPosition - position);
+        present = present.get(shift, Math.max(shift, present.length()));
+        missingSince = shift < missingSince.length
+                ? Arrays.copyOfRange(missingSince, shift, missingSince.length)
+                : new long[0];
+        position = newPosition;
+    }
+
+    private void updateGaps(long now) {
+        int length = present.length();
+        if (missingSince.length != length) {
+            missingSince = Arrays.copyOf(missingSince, length);
+        }
+        int previousGaps = openGaps;
+        openGaps = 0;
+        oldestGapSince = now;
+        for (int offset = present.nextClearBit(0); offset < length; offset = present.nextClearBit(offset + 1)) {
+            if (missingSince[offset] == 0) {
+                missingSince[offset] = now;
+            }
+            oldestGapSince = Math.min(oldestGapSince, missingSince[offset]);
+            openGaps++;
+        }
+        if (openGaps > 0 && previousGaps == 0) {
+            log.info("Detected a gap at global index {}, followed by recent events. Holding back {} events.",
+                     position + 1,
+                     held.size());
+        }
+    }
+
+    /**
+     * Returns whether there are events held back because of a gap.
+     */
+    public synchronized boolean hasOpenGaps() {
+        return openGaps > 0;
+    }
+
+    /**
+     * Returns the global indexes of the first open gaps, in ascending order.
+     *
+     * @param max The maximum amount of global indexes to return
+     */
+    public synchronized long[] getMissingIndexes(int max) {
+        long[] missing = new long[Math.min(max, openGaps)];
+        int offset = present.nextClearBit(0);
+        for (int i = 0; i < missing.length; i++) {
+            missing[i] = position + 1 + offset;
+            offset = present.nextClearBit(offset + 1);
+        }
+        return missing;
+    }
+
+    /**
+     * Returns the amount of global indexes that are currently missing between the migrated and the held back events.
+     */
+    public synchronized int getOpenGapCount() {
+        return openGaps;
+    }
+
+    /**
+     * Returns how long the oldest open gap has been waited for, or 0 if there are no open gaps.
+     */
+    public synchronized long getOldestGapAgeMillis() {
+        return openGaps == 0 ? 0 : System.currentTimeMillis() - oldestGapSince;
+    }
+}
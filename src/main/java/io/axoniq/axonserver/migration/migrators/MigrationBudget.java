@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Resources shared by the {@link Migrator migrators} running at the same time. Reading from the source takes
+ * connections of its pool, and storing in the destination takes transactions of Axon Server. Limiting these across
+ * migrators keeps one of them from starving the others, or overloading the source or destination when they are
+ * combined.
+ * <p>
+ * A read takes a permit for every connection it uses, up to {@link MigrationBaseProperties#getMaxSourceConnections()}
+ * in total. Connections a source keeps open between reads, such as those of readers reading ahead, are held through a
+ * {@link SourceLease} until they are closed. A transaction takes a permit until it completes, up to
+ * {@link MigrationBaseProperties#getMaxDestinationTransactions()} in total. The limits of each migrator itself, such
+ * as {@link MigrationBaseProperties#getMaxInFlightTransactions()}, still apply.
+ */
+@Component
+public class MigrationBudget {
+
+    private final int maxSourceConnections;
+    private final Semaphore sourceConnections;
+    private final Semaphore destinationTransactions;
+
+    public MigrationBudget(MigrationBaseProperties properties) {
+        this.maxSourceConnections = Math.max(1, properties.getMaxSourceConnections());
+        this.sourceConnections = new Semaphore(maxSourceConnections, true);
+        this.destinationTransactions = new Semaphore(Math.max(1, properties.getMaxDestinationTransactions()), true);
+    }
+
+    /**
+     * Performs a read from the source, using the given amount of connections. Reads using more connections than the
+     * budget take the whole budget.
+     *
+     * @param connections The amount of connections used by the read
+     * @param read        The read to perform
+     * @return The result of the read
+     */
+    public <T> T read(int connections, Supplier<T> read) throws InterruptedException {
+        int permits = Math.max(1, Math.min(connections, maxSourceConnections));
+        sourceConnections.acquire(permits);
+        try {
+            return read.get();
+        } finally {
+            sourceConnections.release(permits);
+        }
+    }
+
+    /**
+     * Returns a lease on source connections, initially holding none. It is meant for a reader keeping connections open
+     * between reads, which adjusts the lease to the connections it has open.
+     */
+    public SourceLease sourceLease() {
+        return new SourceLease();
+    }
+
+    /**
+     * Starts a transaction on the destination, waiting for a permit first. The permit is returned once the future of
+     * the transaction completes.
+     *
+     * @param transaction Starts the transaction, returning a future completing with it
+     * @return The future of the transaction
+     */
+    public <T> CompletableFuture<T> store(Supplier<CompletableFuture<T>> transaction) throws InterruptedException {
+        destinationTransactions.acquire();
+        CompletableFuture<T> result;
+        try {
+            result = transaction.get();
+        } catch (RuntimeException e) {
+            destinationTransactions.release();
+            throw e;
+        }
+        result.whenComplete((r, e) -> destinationTransactions.release());
+        return result;
+    }
+
+    /**
+     * Source connections held by a single reader. Holding more than the budget takes the whole budget.
+     */
+    public class SourceLease implements AutoCloseable {
+
+        private int permits;
+
+        private SourceLease() {
+        }
+
+        /**
+         * Changes the amount of connections held, waiting for permits when holding more than before.
+         *
+         * @param connections The amount of connections to hold
+         */
+        public synchronized void hold(int connections) throws InterruptedException {
+            int target = Math.max(0, Math.min(connections, maxSourceConnections));
+            if (target > permits) {
+                sourceConnections.acquire(target - permits);
+            } else if (target < permits) {
+                sourceConnections.release(permits - target);
+            }
+            permits = target;
+        }
+
+        /**
+         * Returns all connections held.
+         */
+        @Override
+        public synchronized void close() {
+            sourceConnections.release(permits);
+            permits = 0;
+        }
+    }
+}
@@ -18,7 +18,7 @@ package io.axoniq.axonserver.migration.migrators;
 
 /**
  * Represents a process that should be run during the migration.
- * Depending on configuration there can be multiple beans defined, which are run in succession.
+ * Depending on configuration there can be multiple beans defined, which are run at the same time.
  *
  * @author Mitchell Herrijgers
  */
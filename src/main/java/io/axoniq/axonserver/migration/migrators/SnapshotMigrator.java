@@ -19,20 +19,24 @@ package io.axoniq.axonserver.migration.migrators;
 
 import io.axoniq.axonserver.grpc.event.Event;
 import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.MigrationBaseProperties.SnapshotOrder;
 import io.axoniq.axonserver.migration.destination.EventStoreStrategy;
-import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
-import io.axoniq.axonserver.migration.migrators.db.MigrationStatusRepository;
+import io.axoniq.axonserver.migration.migrators.checkpoint.CheckpointStore;
 import io.axoniq.axonserver.migration.serialisation.EventSerializer;
 import io.axoniq.axonserver.migration.source.EventProducer;
 import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -40,6 +44,15 @@ import java.util.concurrent.atomic.AtomicLong;
  * <p>
  * You can disable the events migration by setting the {@code axoniq.migration.migrateSnapshots} property to
  * {@code false}.
+ * <p>
+ * Up to {@link MigrationBaseProperties#getMaxInFlightSnapshots()} snapshots are appended at the same time, within the
+ * {@link MigrationBudget} shared with the other migrators. The checkpoint only advances past snapshots of which the
+ * append, and those of all snapshots before it, completed. It is saved after every batch, so an interrupted migration
+ * continues close to where it stopped.
+ * <p>
+ * Each batch continues after the position of the last snapshot read, in the order configured by
+ * {@link MigrationBaseProperties#getSnapshotOrder()}. Reading in {@code PRIMARY_KEY} order is suited for migrating
+ * everything once, as snapshots created later for aggregates that were already passed are not read.
  *
  * @author Marc Gathier
  */
@@ -50,43 +63,37 @@ public class SnapshotMigrator implements Migrator {
 
     private final MigrationBaseProperties migrationProperties;
     private final EventProducer eventProducer;
-    private final MigrationStatusRepository migrationStatusRepository;
+    private final CheckpointStore checkpointStore;
     private final EventSerializer eventSerializer;
     private final EventStoreStrategy eventStoreStrategy;
+    private final SnapshotMigratorStatisticsReporter reporter;
+    private final MigrationBudget budget;
     private final Logger logger = LoggerFactory.getLogger(SnapshotMigrator.class);
 
-    private final AtomicLong snapshotsMigrated = new AtomicLong();
-
     public void migrate() throws Exception {
-        MigrationStatus migrationStatus = migrationStatusRepository.findById(1L).orElse(new MigrationStatus());
-
-        String lastProcessedTimestamp = migrationStatus.getLastSnapshotTimestamp();
-        String lastEventId = migrationStatus.getLastSnapshotEventId();
-
-        boolean keepRunning = true;
+        SnapshotPosition position = checkpointStore.load().getSnapshotPosition();
+        AppendWindow window = new AppendWindow(position);
 
-        logger.info("Starting migration of snapshots from timestamp: {}, batchSize = {}",
-                    lastProcessedTimestamp,
+        logger.info("Starting migration of snapshots in {} order after {}, batchSize = {}",
+                    migrationProperties.getSnapshotOrder(),
+                    position,
                     migrationProperties.getBatchSize());
+        if (migrationProperties.isContinuous() && migrationProperties.getSnapshotOrder() == SnapshotOrder.PRIMARY_KEY) {
+            logger.warn("Snapshots are read in primary key order. New snapshots of aggregates that were already passed "
+                                + "will not be migrated by this continuous migration.");
+        }
+        reporter.initialize(position.getTimestamp());
 
         try {
-            while (keepRunning) {
-                keepRunning = false;
-                List<? extends SnapshotEvent> result = eventProducer.findSnapshots(lastProcessedTimestamp,
-                                                                                   migrationProperties.getBatchSize());
+            while (true) {
+                SnapshotPosition readAfter = position;
+                List<? extends SnapshotEvent> result = budget.read(
+                        1, () -> eventProducer.findSnapshots(readAfter, migrationProperties.getBatchSize()));
                 if (result.isEmpty()) {
                     logger.info("No more snapshots found");
-                    return;
+                    break;
                 }
-                boolean lastFound = (lastEventId == null);
                 for (SnapshotEvent entry : result) {
-                    if (!lastFound) {
-                        lastFound =
-                                entry.getTimeStamp().compareTo(lastProcessedTimestamp) > 0 || entry.getEventIdentifier()
-                                                                                                   .equals(lastEventId);
-                        continue;
-                    }
-
                     Event.Builder eventBuilder = Event.newBuilder()
                                                       .setAggregateIdentifier(entry.getAggregateIdentifier())
                                                       .setPayload(eventSerializer.toPayload(entry))
@@ -95,21 +102,105 @@ public class SnapshotMigrator implements Migrator {
                                                       .setAggregateType(entry.getType());
 
                     eventBuilder.setTimestamp(entry.getTimeStampAsLong());
-                    eventSerializer.convertMetadata(entry.getMetaData(), eventBuilder);
-                    eventStoreStrategy.appendSnapshot(eventBuilder.build());
+                    eventSerializer.convertMetadata(entry, eventBuilder);
+                    position = SnapshotPosition.of(entry);
+                    window.append(eventBuilder.build(), position);
+                }
+                window.saveCheckpoint();
+            }
+            window.completeAll();
+        } finally {
+            window.drain();
+            window.saveCheckpoint();
+        }
+    }
+
+    /**
+     * The snapshots being appended, in the order they were read, and the position up to which all appends completed.
+     */
+    private class AppendWindow {
+
+        private final Deque<PendingSnapshot> inFlight = new ArrayDeque<>();
+        private SnapshotPosition completed;
+        private SnapshotPosition saved;
+        private boolean failed;
+
+        private AppendWindow(SnapshotPosition completed) {
+            this.completed = completed;
+            this.saved = completed;
+        }
+
+        private void append(Event snapshot, SnapshotPosition position) throws Exception {
+            while (inFlight.size() >= Math.max(1, migrationProperties.getMaxInFlightSnapshots())) {
+                completeOldest();
+            }
+            inFlight.add(new PendingSnapshot(budget.store(() -> eventStoreStrategy.appendSnapshotAsync(snapshot)),
+                                             position));
+            while (!inFlight.isEmpty() && inFlight.peek().appended.isDone()) {
+                completeOldest();
+            }
+        }
+
+        private void completeAll() throws Exception {
+            while (!inFlight.isEmpty()) {
+                completeOldest();
+            }
+        }
 
-                    lastProcessedTimestamp = entry.getTimeStamp();
-                    lastEventId = entry.getEventIdentifier();
-                    if (snapshotsMigrated.incrementAndGet() % 1000 == 0) {
-                        logger.debug("Migrated {} snapshots", snapshotsMigrated.get());
+        /**
+         * Waits for the oldest append. It is only removed from the window once it succeeded, so a failed append is
+         * never passed by the position.
+         */
+        private void completeOldest() throws Exception {
+            PendingSnapshot snapshot = inFlight.peek();
+            try {
+                snapshot.appended.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                failed = true;
+                throw e;
+            }
+            inFlight.poll();
+            completed = snapshot.position;
+            reporter.reportSnapshotAppended(snapshot.position.getTimestamp());
+        }
+
+        /**
+         * Waits for the appends still in flight after a failure, advancing the position up to the first failed one.
+         * Appends after the failed one may still succeed, but they are migrated again by the next run.
+         */
+        private void drain() {
+            while (!inFlight.isEmpty()) {
+                try {
+                    if (failed) {
+                        inFlight.poll().appended.get(30, TimeUnit.SECONDS);
+                    } else {
+                        completeOldest();
                     }
-                    keepRunning = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    // the failure is recorded, the remaining appends are only waited for
                 }
             }
-        } finally {
-            migrationStatus.setLastSnapshotEventId(lastEventId);
-            migrationStatus.setLastSnapshotTimestamp(lastProcessedTimestamp);
-            migrationStatusRepository.save(migrationStatus);
+        }
+
+        private void saveCheckpoint() {
+            if (completed != saved) {
+                checkpointStore.saveSnapshotPosition(completed);
+                saved = completed;
+            }
+        }
+    }
+
+    private static final class PendingSnapshot {
+
+        private final CompletableFuture<Void> appended;
+        private final SnapshotPosition position;
+
+        private PendingSnapshot(CompletableFuture<Void> appended, SnapshotPosition position) {
+            this.appended = appended;
+            this.position = position;
         }
     }
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reports statistics about the progress of the snapshot migration. It logs the timestamp of the last snapshot
+ * appended, the amount of snapshots migrated and the rate at which they are migrated every 5 seconds.
+ */
+@Service
+@Slf4j
+public class SnapshotMigratorStatisticsReporter {
+
+    private final AtomicLong snapshotsMigrated = new AtomicLong();
+    private volatile String lastProcessedTimestamp;
+    private volatile Instant timeStarted;
+    private long migratedAtStart;
+
+    public void initialize(String lastProcessedTimestamp) {
+        this.lastProcessedTimestamp = lastProcessedTimestamp;
+        this.migratedAtStart = snapshotsMigrated.get();
+        this.timeStarted = Instant.now();
+    }
+
+    public void reportSnapshotAppended(String timestamp) {
+        this.lastProcessedTimestamp = timestamp;
+        snapshotsMigrated.incrementAndGet();
+    }
+
+    @Scheduled(fixedRate = 5000, initialDelay = 1000)
+    public void report() {
+        if (this.timeStarted == null) {
+            return;
+        }
+        long migrated = snapshotsMigrated.get();
+        log.info("Snapshot timestamp: {}. Migrated snapshots: {}", lastProcessedTimestamp, migrated);
+        long secondsSinceStart = ChronoUnit.SECONDS.between(this.timeStarted, Instant.now());
+        if (secondsSinceStart < 1) {
+            return;
+        }
+        log.info("Processing at average rate of {} snapshots/sec (since start)",
+                 (double) (migrated - migratedAtStart) / secondsSinceStart);
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators.checkpoint;
+
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+
+/**
+ * Stores the progress of the migration, so a next run continues where the previous one stopped. Which implementation
+ * is used is configured through {@code axoniq.migration.checkpointStore}.
+ * <p>
+ * The event and snapshot positions are saved separately, so migrators only update their own part of the
+ * {@link MigrationStatus}.
+ *
+ * @see JournalCheckpointStore
+ * @see JpaCheckpointStore
+ */
+public interface CheckpointStore {
+
+    /**
+     * Returns the last saved status of the migration, or a new status if nothing was saved yet. Changes to the
+     * returned status are not saved.
+     */
+    MigrationStatus load();
+
+    /**
+     * Saves the position of the last event migrated.
+     *
+     * @param position The position of the last event migrated
+     */
+    void saveEventPosition(EventPosition position);
+
+    /**
+     * Saves the position of the last snapshot migrated.
+     *
+     * @param position The position of the last snapshot migrated
+     */
+    void saveSnapshotPosition(SnapshotPosition position);
+}
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators.checkpoint;
+
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatusRepository;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.axonframework.common.AxonThreadFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * {@link CheckpointStore} appending every change of the {@link MigrationStatus} to a memory-mapped journal file. This
+ * is the default, configured through {@code axoniq.migration.checkpointFile}.
+ * <p>
+ * Each record holds the complete status, preceded by its length and a CRC32 checksum. On startup, the last intact
+ * record is the status; a record torn by a crash is ignored. The journal is then rewritten with only that record,
+ * which is also done when it is full. When no journal exists yet, the status is taken over from the migration
+ * database, so existing migrations continue where they were.
+ * <p>
+ * Saving writes to the mapped file, which survives the tool being killed. Writing it to disk is grouped: the journal is
+ * forced every {@link MigrationBaseProperties#getCheckpointSyncMillis()}, covering all batches saved in the meantime,
+ * and when the application stops. With a sync interval of 0, every save is forced before returning.
+ */
+@Component
+@ConditionalOnProperty(value = "axoniq.migration.checkpointStore", havingValue = "JOURNAL", matchIfMissing = true)
+@Slf4j
+public class JournalCheckpointStore implements CheckpointStore {
+
+    private static final int JOURNAL_SIZE = 1024 * 1024;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final byte RECORD_VERSION = 1;
+
+    private final MigrationBaseProperties properties;
+    private final MigrationStatusRepository migrationStatusRepository;
+    private final Path path;
+
+    private MigrationStatus migrationStatus;
+    private FileChannel channel;
+    private MappedByteBuffer journal;
+    private boolean dirty;
+    private ScheduledExecutorService syncExecutor;
+
+    public JournalCheckpointStore(MigrationBaseProperties properties,
+                                  MigrationStatusRepository migrationStatusRepository) {
+        this.properties = properties;
+        this.migrationStatusRepository = migrationStatusRepository;
+        this.path = Paths.get(properties.getCheckpointFile());
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        if (Files.exists(path)) {
+            migrationStatus = recover();
+        } else {
+            migrationStatus = migrationStatusRepository.findById(1L).orElse(new MigrationStatus());
+            log.info("Starting checkpoint journal {} from the migration database, at global index {}",
+                     path, migrationStatus.getLastEventGlobalIndex());
+        }
+        rewrite();
+        if (properties.getCheckpointSyncMillis() > 0) {
+            syncExecutor = Executors.newSingleThreadScheduledExecutor(new AxonThreadFactory("checkpoint-sync"));
+            syncExecutor.scheduleWithFixedDelay(this::sync,
+                                                properties.getCheckpointSyncMillis(),
+                                                properties.getCheckpointSyncMillis(),
+                                                TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public synchronized MigrationStatus load() {
+        return migrationStatus.copy();
+    }
+
+    @Override
+    public synchronized void saveEventPosition(EventPosition position) {
+        migrationStatus.setEventPosition(position);
+        append();
+    }
+
+    @Override
+    public synchronized void saveSnapshotPosition(SnapshotPosition position) {
+        migrationStatus.setSnapshotPosition(position);
+        append();
+    }
+
+    private void append() {
+        try {
+            byte[] record = encode(migrationStatus);
+            if (journal.remaining() < RECORD_HEADER_SIZE + record.length) {
+                rewrite();
+            } else {
+                write(journal, record);
+                dirty = true;
+            }
+            if (syncExecutor == null) {
+                sync();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write checkpoint journal " + path, e);
+        }
+    }
+
+    /**
+     * Forces the records written since the last sync to disk.
+     */
+    public synchronized void sync() {
+        if (dirty) {
+            journal.force();
+            dirty = false;
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+        if (channel != null) {
+            sync();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads the last intact record of the journal.
+     */
+    private MigrationStatus recover() throws IOException {
+        MigrationStatus recovered = new MigrationStatus();
+        int records = 0;
+        try (FileChannel existing = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = existing.map(FileChannel.MapMode.READ_ONLY, 0, existing.size());
+            while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+                int length = buffer.getInt(buffer.position());
+                int checksum = buffer.getInt(buffer.position() + 4);
+                if (length <= 0 || length > buffer.remaining() - RECORD_HEADER_SIZE) {
+                    break;
+                }
+                byte[] record = new byte[length];
+                buffer.position(buffer.position() + RECORD_HEADER_SIZE);
+                buffer.get(record);
+                if (checksum(record) != checksum) {
+                    log.warn("Ignoring damaged record at the end of checkpoint journal {}", path);
+                    break;
+                }
+                recovered = decode(record);
+                records++;
+            }
+        }
+        log.info("Recovered checkpoint from {} records in journal {}, at global index {}",
+                 records, path, recovered.getLastEventGlobalIndex());
+        return recovered;
+    }
+
+    /**
+     * Replaces the journal by one containing only the current status. The new journal is written next to it, and moved
+     * in place once it is on disk, so there always is a complete journal.
+     */
+    private void rewrite() throws IOException {
+        Path rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(rewritten);
+        try (FileChannel newChannel = FileChannel.open(rewritten,
+                                                       StandardOpenOption.CREATE_NEW,
+                                                       StandardOpenOption.READ,
+                                                       StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, JOURNAL_SIZE);
+            write(buffer, encode(migrationStatus));
+            buffer.force();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+        Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        journal = channel.map(FileChannel.MapMode.READ_WRITE, 0, JOURNAL_SIZE);
+        journal.position(RECORD_HEADER_SIZE + journal.getInt(0));
+        dirty = false;
+    }
+
+    private static void write(MappedByteBuffer buffer, byte[] record) {
+        int start = buffer.position();
+        buffer.position(start + RECORD_HEADER_SIZE);
+        buffer.put(record);
+        buffer.putInt(start + 4, checksum(record));
+        // The length goes last, so a record is never found before it is complete
+        buffer.putInt(start, record.length);
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(MigrationStatus status) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(RECORD_VERSION);
+            output.writeLong(status.getLastEventGlobalIndex());
+            writeNullable(output, status.getLastEventAggregateIdentifier());
+            output.writeLong(status.getLastEventSequenceNumber());
+            writeNullable(output, status.getEventResumeToken());
+            writeNullable(output, status.getLastSnapshotTimestamp());
+            writeNullable(output, status.getLastSnapshotEventId());
+            writeNullable(output, status.getLastSnapshotAggregateIdentifier());
+            output.writeLong(status.getLastSnapshotSequenceNumber());
+            writeNullable(output, status.getLastSnapshotType());
+            writeNullable(output, status.getLastSnapshotResumeToken());
+        }
+        return bytes.toByteArray();
+    }
+
+    private static MigrationStatus decode(byte[] record) throws IOException {
+        try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(record))) {
+            if (input.readByte() != RECORD_VERSION) {
+                throw new IOException("Unsupported checkpoint record version");
+            }
+            MigrationStatus status = new MigrationStatus();
+            status.setLastEventGlobalIndex(input.readLong());
+            status.setLastEventAggregateIdentifier(readNullable(input));
+            status.setLastEventSequenceNumber(input.readLong());
+            status.setEventResumeToken(readNullable(input));
+            status.setLastSnapshotTimestamp(readNullable(input));
+            status.setLastSnapshotEventId(readNullable(input));
+            status.setLastSnapshotAggregateIdentifier(readNullable(input));
+            status.setLastSnapshotSequenceNumber(input.readLong());
+            status.setLastSnapshotType(readNullable(input));
+            status.setLastSnapshotResumeToken(readNullable(input));
+            return status;
+        }
+    }
+
+    private static void writeNullable(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream input) throws IOException {
+        return input.readBoolean() ? input.readUTF() : null;
+    }
+}
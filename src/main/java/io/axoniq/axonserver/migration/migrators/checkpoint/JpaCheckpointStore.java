@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators.checkpoint;
+
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatusRepository;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link CheckpointStore} saving the {@link MigrationStatus} in the migration database, through JPA. Used when
+ * {@code axoniq.migration.checkpointStore} is set to {@code JPA}.
+ */
+@Component
+@ConditionalOnProperty(value = "axoniq.migration.checkpointStore", havingValue = "JPA")
+public class JpaCheckpointStore implements CheckpointStore {
+
+    private final MigrationStatusRepository migrationStatusRepository;
+    private MigrationStatus migrationStatus;
+
+    public JpaCheckpointStore(MigrationStatusRepository migrationStatusRepository) {
+        this.migrationStatusRepository = migrationStatusRepository;
+    }
+
+    @Override
+    public synchronized MigrationStatus load() {
+        return current().copy();
+    }
+
+    @Override
+    public synchronized void saveEventPosition(EventPosition position) {
+        MigrationStatus status = current();
+        status.setEventPosition(position);
+        migrationStatus = migrationStatusRepository.save(status);
+    }
+
+    @Override
+    public synchronized void saveSnapshotPosition(SnapshotPosition position) {
+        MigrationStatus status = current();
+        status.setSnapshotPosition(position);
+        migrationStatus = migrationStatusRepository.save(status);
+    }
+
+    private MigrationStatus current() {
+        if (migrationStatus == null) {
+            migrationStatus = migrationStatusRepository.findById(1L).orElse(new MigrationStatus());
+        }
+        return migrationStatus;
+    }
+}
@@ -16,11 +16,14 @@
 
 package io.axoniq.axonserver.migration.migrators.db;
 
+import io.axoniq.axonserver.migration.source.EventPosition;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 import jakarta.persistence.Cacheable;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
 
@@ -40,6 +43,77 @@ public class MigrationStatus {
     private long id = 1;
 
     private long lastEventGlobalIndex = -1;
+    private String lastEventAggregateIdentifier;
+    private long lastEventSequenceNumber = -1;
+    @Column(length = 1024)
+    private String eventResumeToken;
     private String lastSnapshotTimestamp = "1970-01-01T00:00:00Z";
     private String lastSnapshotEventId;
+    private String lastSnapshotAggregateIdentifier;
+    private long lastSnapshotSequenceNumber = -1;
+    private String lastSnapshotType;
+    @Column(length = 1024)
+    private String lastSnapshotResumeToken;
+
+    /**
+     * Returns a copy of this status, which can be changed without affecting this one.
+     */
+    public MigrationStatus copy() {
+        MigrationStatus copy = new MigrationStatus();
+        copy.setLastEventGlobalIndex(lastEventGlobalIndex);
+        copy.setLastEventAggregateIdentifier(lastEventAggregateIdentifier);
+        copy.setLastEventSequenceNumber(lastEventSequenceNumber);
+        copy.setEventResumeToken(eventResumeToken);
+        copy.setLastSnapshotTimestamp(lastSnapshotTimestamp);
+        copy.setLastSnapshotEventId(lastSnapshotEventId);
+        copy.setLastSnapshotAggregateIdentifier(lastSnapshotAggregateIdentifier);
+        copy.setLastSnapshotSequenceNumber(lastSnapshotSequenceNumber);
+        copy.setLastSnapshotType(lastSnapshotType);
+        copy.setLastSnapshotResumeToken(lastSnapshotResumeToken);
+        return copy;
+    }
+
+    /**
+     * Returns the position of the last event migrated.
+     */
+    public EventPosition getEventPosition() {
+        return new EventPosition(lastEventGlobalIndex,
+                                 lastEventAggregateIdentifier,
+                                 lastEventSequenceNumber,
+                                 eventResumeToken);
+    }
+
+    /**
+     * Sets the position of the last event migrated.
+     */
+    public void setEventPosition(EventPosition position) {
+        lastEventGlobalIndex = position.getGlobalIndex();
+        lastEventAggregateIdentifier = position.getAggregateIdentifier();
+        lastEventSequenceNumber = position.getSequenceNumber();
+        eventResumeToken = position.getResumeToken();
+    }
+
+    /**
+     * Returns the position of the last snapshot migrated.
+     */
+    public SnapshotPosition getSnapshotPosition() {
+        return new SnapshotPosition(lastSnapshotTimestamp,
+                                    lastSnapshotEventId,
+                                    lastSnapshotAggregateIdentifier,
+                                    lastSnapshotSequenceNumber,
+                                    lastSnapshotType,
+                                    lastSnapshotResumeToken);
+    }
+
+    /**
+     * Sets the position of the last snapshot migrated.
+     */
+    public void setSnapshotPosition(SnapshotPosition position) {
+        lastSnapshotTimestamp = position.getTimestamp();
+        lastSnapshotEventId = position.getEventIdentifier();
+        lastSnapshotAggregateIdentifier = position.getAggregateIdentifier();
+        lastSnapshotSequenceNumber = position.getSequenceNumber();
+        lastSnapshotType = position.getType();
+        lastSnapshotResumeToken = position.getResumeToken();
+    }
 }
@@ -16,10 +16,15 @@
 
 package io.axoniq.axonserver.migration.serialisation;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.axoniq.axonserver.grpc.MetaDataValue;
 import io.axoniq.axonserver.grpc.SerializedObject;
 import io.axoniq.axonserver.grpc.event.Event;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
 import io.axoniq.axonserver.migration.source.BaseEvent;
 import org.axonframework.axonserver.connector.util.GrpcMetaDataConverter;
 import org.axonframework.messaging.MetaData;
@@ -27,35 +32,125 @@ import org.axonframework.serialization.SerializedMetaData;
 import org.axonframework.serialization.Serializer;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Migrates a part of the old non-AxonServer store to the new Axon Server instance.
  * Contains several utility functions that will probably be used by all implementations.
+ * <p>
+ * Metadata is often empty, or the same for many events. Empty metadata is recognized without deserializing it, and
+ * the conversion results of up to {@link MigrationBaseProperties#getMetadataCacheSize()} distinct metadata blobs are
+ * cached. Metadata is transcoded directly into {@link MetaDataValue MetaDataValues} by a {@link MetaDataTranscoder}
+ * matching the configured {@link SerializerType}, falling back to deserializing it when the transcoder cannot handle
+ * it.
  */
 @Service
 public class EventSerializer {
+
+    private static final int MAX_CACHEABLE_METADATA_SIZE = 4096;
+    private static final byte[][] EMPTY_METADATA = {
+            "<meta-data/>".getBytes(StandardCharsets.UTF_8),
+            "<meta-data></meta-data>".getBytes(StandardCharsets.UTF_8),
+            "{}".getBytes(StandardCharsets.UTF_8),
+    };
+
     private final Serializer serializer;
     private final GrpcMetaDataConverter grpcMetaDataConverter;
+    private final MetaDataTranscoder metaDataTranscoder;
+    private final Cache<ByteString, Map<String, MetaDataValue>> metadataCache;
+    private final LongAdder emptyMetadataCount = new LongAdder();
 
-    public EventSerializer(Serializer serializer) {
+    public EventSerializer(Serializer serializer,
+                           SerializerProperties serializerProperties,
+                           MigrationBaseProperties properties) {
         this.serializer = serializer;
         this.grpcMetaDataConverter = new GrpcMetaDataConverter(this.serializer);
+        this.metaDataTranscoder = !properties.isMetadataTranscoding() ? null
+                : SerializerType.JACKSON.equals(serializerProperties.getEvents()) ? new JacksonMetaDataTranscoder()
+                : new XStreamMetaDataTranscoder();
+        this.metadataCache = properties.getMetadataCacheSize() > 0
+                ? Caffeine.newBuilder().maximumSize(properties.getMetadataCacheSize()).recordStats().build()
+                : null;
     }
 
-    public void convertMetadata(byte[] metadataBytes, Event.Builder eventBuilder) {
-        if (metadataBytes != null) {
-            MetaData metaData = serializer.deserialize(new SerializedMetaData<>(metadataBytes, byte[].class));
-            Map<String, MetaDataValue> metaDataValues = new HashMap<>();
-            metaData.forEach((k, v) -> metaDataValues.put(k, grpcMetaDataConverter.convertToMetaDataValue(v)));
+    /**
+     * Adds the metadata of the given event to the builder. Uses the {@link BaseEvent#getMetaDataValues()} of the event
+     * when available, and converts the serialized {@link BaseEvent#getMetaData()} otherwise.
+     */
+    public void convertMetadata(BaseEvent entry, Event.Builder eventBuilder) {
+        Map<String, MetaDataValue> metaDataValues = entry.getMetaDataValues();
+        if (metaDataValues != null) {
             eventBuilder.putAllMetaData(metaDataValues);
+            return;
+        }
+        convertMetadata(entry.getMetaData(), eventBuilder);
+    }
+
+    public void convertMetadata(byte[] metadataBytes, Event.Builder eventBuilder) {
+        if (metadataBytes == null) {
+            return;
+        }
+        if (isEmptyMetadata(metadataBytes)) {
+            emptyMetadataCount.increment();
+            return;
+        }
+        if (metadataCache == null || metadataBytes.length > MAX_CACHEABLE_METADATA_SIZE) {
+            eventBuilder.putAllMetaData(deserializeMetadata(metadataBytes));
+            return;
+        }
+        // The metadata arrays of the sources are not modified after reading, so they can be wrapped
+        eventBuilder.putAllMetaData(metadataCache.get(UnsafeByteOperations.unsafeWrap(metadataBytes),
+                                                      key -> deserializeMetadata(metadataBytes)));
+    }
+
+    private Map<String, MetaDataValue> deserializeMetadata(byte[] metadataBytes) {
+        if (metaDataTranscoder != null) {
+            Map<String, MetaDataValue> transcoded = metaDataTranscoder.transcode(metadataBytes);
+            if (transcoded != null) {
+                return Collections.unmodifiableMap(transcoded);
+            }
+        }
+        MetaData metaData = serializer.deserialize(new SerializedMetaData<>(metadataBytes, byte[].class));
+        Map<String, MetaDataValue> metaDataValues = new HashMap<>();
+        metaData.forEach((k, v) -> metaDataValues.put(k, grpcMetaDataConverter.convertToMetaDataValue(v)));
+        return Collections.unmodifiableMap(metaDataValues);
+    }
+
+    private boolean isEmptyMetadata(byte[] metadataBytes) {
+        if (metadataBytes.length == 0) {
+            return true;
+        }
+        for (byte[] emptyMetadata : EMPTY_METADATA) {
+            if (Arrays.equals(metadataBytes, emptyMetadata)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a summary of the metadata conversions so far, for statistics reporting.
+     */
+    public String getMetadataStatistics() {
+        if (metadataCache == null) {
+            return String.format("empty: %d, cache disabled", emptyMetadataCount.sum());
         }
+        CacheStats stats = metadataCache.stats();
+        return String.format("empty: %d, cache hits: %d, cache misses: %d, hit rate: %.3f",
+                             emptyMetadataCount.sum(),
+                             stats.hitCount(),
+                             stats.missCount(),
+                             stats.hitRate());
     }
 
     public SerializedObject toPayload(BaseEvent entry) {
         SerializedObject.Builder builder = SerializedObject.newBuilder()
-                                                           .setData(ByteString.copyFrom(entry.getPayload()))
+                                                           .setData(entry.getPayloadAsByteString())
                                                            .setType(entry.getPayloadType());
 
         if( entry.getPayloadRevision() != null)
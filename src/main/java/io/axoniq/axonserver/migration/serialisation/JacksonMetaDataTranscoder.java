@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.serialisation;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.axoniq.axonserver.grpc.MetaDataValue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link MetaDataTranscoder} for metadata serialized by the {@link org.axonframework.serialization.json.JacksonSerializer},
+ * reading it with a streaming {@link JsonParser}. Handles string, boolean, floating point and integer values that fit
+ * in a {@code long}.
+ */
+public class JacksonMetaDataTranscoder implements MetaDataTranscoder {
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    @Override
+    public Map<String, MetaDataValue> transcode(byte[] metadataBytes) {
+        try (JsonParser parser = jsonFactory.createParser(metadataBytes)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            Map<String, MetaDataValue> values = new HashMap<>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String key = parser.currentName();
+                MetaDataValue value = toValue(parser.nextToken(), parser);
+                if (value == null) {
+                    return null;
+                }
+                values.put(key, value);
+            }
+            return parser.currentToken() == JsonToken.END_OBJECT && parser.nextToken() == null ? values : null;
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private MetaDataValue toValue(JsonToken token, JsonParser parser) throws IOException {
+        if (token == null) {
+            return null;
+        }
+        switch (token) {
+            case VALUE_STRING:
+                return MetaDataValue.newBuilder().setTextValue(parser.getText()).build();
+            case VALUE_NUMBER_INT:
+                JsonParser.NumberType numberType = parser.getNumberType();
+                if (numberType != JsonParser.NumberType.INT && numberType != JsonParser.NumberType.LONG) {
+                    return null;
+                }
+                return MetaDataValue.newBuilder().setNumberValue(parser.getLongValue()).build();
+            case VALUE_NUMBER_FLOAT:
+                return MetaDataValue.newBuilder().setDoubleValue(parser.getDoubleValue()).build();
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return MetaDataValue.newBuilder().setBooleanValue(parser.getBooleanValue()).build();
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.serialisation;
+
+import io.axoniq.axonserver.grpc.MetaDataValue;
+
+import java.util.Map;
+
+/**
+ * Converts serialized {@link org.axonframework.messaging.MetaData} straight into {@link MetaDataValue MetaDataValues},
+ * without deserializing it into Java objects first.
+ * <p>
+ * Transcoders only handle the value types that have a direct {@link MetaDataValue} representation. When the metadata
+ * contains anything else, they return {@code null} so the regular deserialization can be used instead.
+ */
+public interface MetaDataTranscoder {
+
+    /**
+     * Transcodes the given serialized metadata.
+     *
+     * @param metadataBytes The serialized metadata
+     * @return The metadata values, or {@code null} if the metadata contains values this transcoder does not handle
+     */
+    Map<String, MetaDataValue> transcode(byte[] metadataBytes);
+}
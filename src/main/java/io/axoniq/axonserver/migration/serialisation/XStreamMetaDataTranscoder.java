@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.serialisation;
+
+import io.axoniq.axonserver.grpc.MetaDataValue;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * {@link MetaDataTranscoder} for metadata serialized by the {@link org.axonframework.serialization.xml.XStreamSerializer},
+ * reading it with a StAX reader. The format is:
+ * <pre>{@code
+ * <meta-data>
+ *     <entry><string>key</string><long>5</long></entry>
+ * </meta-data>
+ * }</pre>
+ * Handles {@code string}, {@code long}, {@code int}, {@code short}, {@code byte}, {@code double}, {@code float} and
+ * {@code boolean} values.
+ */
+public class XStreamMetaDataTranscoder implements MetaDataTranscoder {
+
+    private final XMLInputFactory inputFactory;
+
+    public XStreamMetaDataTranscoder() {
+        this.inputFactory = XMLInputFactory.newInstance();
+        this.inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        this.inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    }
+
+    @Override
+    public Map<String, MetaDataValue> transcode(byte[] metadataBytes) {
+        XMLStreamReader reader = null;
+        try {
+            reader = inputFactory.createXMLStreamReader(new ByteArrayInputStream(metadataBytes));
+            if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"meta-data".equals(reader.getLocalName())) {
+                return null;
+            }
+            Map<String, MetaDataValue> values = new HashMap<>();
+            while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                if (!"entry".equals(reader.getLocalName())
+                        || reader.nextTag() != XMLStreamConstants.START_ELEMENT
+                        || !"string".equals(reader.getLocalName())) {
+                    return null;
+                }
+                String key = reader.getElementText();
+                if (reader.nextTag() != XMLStreamConstants.START_ELEMENT || reader.getAttributeCount() > 0) {
+                    return null;
+                }
+                MetaDataValue value = toValue(reader.getLocalName(), reader);
+                if (value == null || reader.nextTag() != XMLStreamConstants.END_ELEMENT) {
+                    return null;
+                }
+                values.put(key, value);
+            }
+            return values;
+        } catch (XMLStreamException | RuntimeException e) {
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    private MetaDataValue toValue(String type, XMLStreamReader reader) throws XMLStreamException {
+        switch (type) {
+            case "string":
+                return MetaDataValue.newBuilder().setTextValue(reader.getElementText()).build();
+            case "long":
+            case "int":
+            case "short":
+            case "byte":
+                return MetaDataValue.newBuilder().setNumberValue(Long.parseLong(reader.getElementText())).build();
+            case "double":
+                return MetaDataValue.newBuilder().setDoubleValue(Double.parseDouble(reader.getElementText())).build();
+            case "float":
+                // Widen like Float.doubleValue() does, to end up with exactly the same value
+                return MetaDataValue.newBuilder().setDoubleValue(Float.parseFloat(reader.getElementText())).build();
+            case "boolean":
+                return MetaDataValue.newBuilder().setBooleanValue(Boolean.parseBoolean(reader.getElementText())).build();
+            default:
+                return null;
+        }
+    }
+
+    private void close(XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (XMLStreamException e) {
+                // Nothing to release for an in-memory stream
+            }
+        }
+    }
+}
@@ -16,6 +16,12 @@
 
 package io.axoniq.axonserver.migration.source;
 
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import io.axoniq.axonserver.grpc.MetaDataValue;
+
+import java.util.Map;
+
 /**
  * @author Marc Gathier
  */
@@ -30,5 +36,37 @@ public interface BaseEvent {
 
     byte[] getPayload();
 
+    /**
+     * Returns the payload as a {@link ByteString}, which is handed to Axon Server as-is. Sources that hold their
+     * payload in another form should override this to avoid copying it.
+     * <p>
+     * Defaults to wrapping the result of {@link #getPayload()} without copying it. The array should not be modified
+     * afterwards.
+     */
+    default ByteString getPayloadAsByteString() {
+        byte[] payload = getPayload();
+        return payload == null ? ByteString.EMPTY : UnsafeByteOperations.unsafeWrap(payload);
+    }
+
     byte[] getMetaData();
+
+    /**
+     * Returns the metadata in its Axon Server representation, for sources that already have it in that form. This
+     * saves serializing the metadata only to have it deserialized again.
+     * <p>
+     * Defaults to {@code null}, indicating {@link #getMetaData()} should be used.
+     */
+    default Map<String, MetaDataValue> getMetaDataValues() {
+        return null;
+    }
+
+    /**
+     * Returns the token to resume reading the source after this event, for sources that read through a stream of
+     * changes. It is stored with the checkpoint once the event has been migrated.
+     * <p>
+     * Defaults to {@code null}, indicating the source continues from the global index or snapshot position.
+     */
+    default String getResumeToken() {
+        return null;
+    }
 }
@@ -16,6 +16,8 @@
 
 package io.axoniq.axonserver.migration.source;
 
+import io.axoniq.axonserver.grpc.event.Event;
+
 /**
  * @author Marc Gathier
  */
@@ -27,5 +29,14 @@ public interface DomainEvent extends BaseEvent {
 
     long getSequenceNumber();
 
+    /**
+     * Returns the event in its Axon Server representation, for sources that already have it in that form. It is then
+     * handed to Axon Server as-is, apart from the sequence number when that is reassigned.
+     * <p>
+     * Defaults to {@code null}, indicating the event is built from the other properties.
+     */
+    default Event getAxonServerEvent() {
+        return null;
+    }
 
 }
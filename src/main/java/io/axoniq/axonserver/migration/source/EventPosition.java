@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Position of the last event migrated. Besides the global index, it holds the aggregate identifier and sequence number
+ * of the event, for sources where the global index alone does not identify an event, such as the timestamp used by
+ * Mongo. Sources reading events from a stream of changes add the token to resume it after the event.
+ * <p>
+ * Keys that are not known, because nothing was migrated or the position was saved by a version that did not keep them,
+ * are {@code null}, or {@code -1} for the sequence number.
+ */
+@Getter
+@AllArgsConstructor
+@EqualsAndHashCode
+@ToString
+public class EventPosition {
+
+    private final long globalIndex;
+    private final String aggregateIdentifier;
+    private final long sequenceNumber;
+    private final String resumeToken;
+
+    /**
+     * Returns the position at the given global index, after the given event.
+     *
+     * @param globalIndex The global index of the last event migrated
+     * @param lastEvent   The last event migrated, or {@code null} if it is not known
+     */
+    public static EventPosition of(long globalIndex, DomainEvent lastEvent) {
+        if (lastEvent == null) {
+            return new EventPosition(globalIndex, null, -1, null);
+        }
+        return new EventPosition(globalIndex,
+                                 lastEvent.getAggregateIdentifier(),
+                                 lastEvent.getSequenceNumber(),
+                                 lastEvent.getResumeToken());
+    }
+}
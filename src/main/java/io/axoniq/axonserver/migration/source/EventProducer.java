@@ -16,6 +16,8 @@
 
 package io.axoniq.axonserver.migration.source;
 
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+
 import java.util.List;
 
 /**
@@ -26,9 +28,73 @@ import java.util.List;
  */
 public interface EventProducer {
 
-    List<? extends DomainEvent> findEvents(long lastProcessedToken, int batchSize);
+    /**
+     * Finds the events after the given position. Sources of which several events can share a global index, or that
+     * read through a stream of changes, use the other parts of the position to continue right after the last event.
+     * <p>
+     * The position is usually that of the last event returned, but it can be an earlier one. The migration reads ahead
+     * of what has been stored, and continues from its checkpoint when storing fails. Sources keeping a cursor or stream
+     * open between reads must open it again at the given position in that case.
+     *
+     * @param position  The position of the last event migrated
+     * @param batchSize The maximum amount of events to return
+     * @return The events after the position, in the order to migrate them
+     */
+    List<? extends DomainEvent> findEvents(EventPosition position, int batchSize);
+
+    /**
+     * Whether the global indexes of the events are a sequence, of which missing numbers indicate events not committed
+     * yet. Only then the migration holds back the events after a gap. Sources using another value as global index,
+     * such as a timestamp, should return {@code false}.
+     */
+    default boolean hasSequentialGlobalIndexes() {
+        return true;
+    }
+
+    /**
+     * Returns the amount of source connections kept open after the last read, such as those of readers reading ahead
+     * or of a cursor. These count against {@link MigrationBaseProperties#getMaxSourceConnections()} until they are
+     * closed. Connections only used during a read are not included.
+     * <p>
+     * Defaults to 0, for sources not keeping connections open between reads.
+     */
+    default int getOpenConnections() {
+        return 0;
+    }
+
+    /**
+     * Returns the amount of source connections the next {@link #findEvents(EventPosition, int)} can use at the same
+     * time, such as those of readers reading ranges of events in parallel. These are taken from
+     * {@link MigrationBaseProperties#getMaxSourceConnections()} for the duration of the read.
+     * <p>
+     * Defaults to 1, for sources reading one batch at a time.
+     */
+    default int getReadConnections() {
+        return 1;
+    }
+
+    /**
+     * Finds the events with the given global indexes, used to check whether the events missing in a gap have appeared.
+     * Returns {@code null} when the source cannot look up events by global index, in which case the events are read
+     * again with {@link #findEvents(EventPosition, int)}.
+     *
+     * @param globalIndexes The global indexes to look up, in ascending order
+     * @return The events found, or {@code null} if not supported
+     */
+    default List<? extends DomainEvent> findEventsByGlobalIndexes(long[] globalIndexes) {
+        return null;
+    }
 
-    List<? extends SnapshotEvent> findSnapshots(String lastProcessedTimestamp, int batchSize);
+    /**
+     * Finds the snapshots after the given position, in the order configured by
+     * {@link MigrationBaseProperties#getSnapshotOrder()}. The position itself is not included, so the result only
+     * contains snapshots that were not migrated yet.
+     *
+     * @param position  The position of the last snapshot migrated
+     * @param batchSize The maximum amount of snapshots to return
+     * @return The next snapshots, or an empty list when there are none
+     */
+    List<? extends SnapshotEvent> findSnapshots(SnapshotPosition position, int batchSize);
 
     default long getMaxIndex() {
         return -1; // -1 indicates not supported
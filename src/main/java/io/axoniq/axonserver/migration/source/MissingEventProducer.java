@@ -38,12 +38,12 @@ public class MissingEventProducer implements EventProducer {
     }
 
     @Override
-    public List<? extends DomainEvent> findEvents(long lastProcessedToken, int batchSize) {
+    public List<? extends DomainEvent> findEvents(EventPosition position, int batchSize) {
         throw new IllegalStateException(MIGRATION_SOURCE_WAS_NOT_DEFINED);
     }
 
     @Override
-    public List<? extends SnapshotEvent> findSnapshots(String lastProcessedTimestamp, int batchSize) {
+    public List<? extends SnapshotEvent> findSnapshots(SnapshotPosition position, int batchSize) {
         throw new IllegalStateException(MIGRATION_SOURCE_WAS_NOT_DEFINED);
     }
 }
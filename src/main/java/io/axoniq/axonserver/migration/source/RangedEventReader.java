@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.source;
+
+import org.axonframework.common.AxonThreadFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads the events up to a fixed global index by splitting the index space into ranges, which are read concurrently.
+ * The ranges are handed out in order, so batches taken from this reader are in global index order. At most one range
+ * per reading thread is buffered ahead.
+ * <p>
+ * The ranges are either of a fixed size, or between given split points. The latter suits sources of which the global
+ * indexes are not evenly spread, such as timestamps.
+ * <p>
+ * Only meant for the historical part of an event store. The events read are still subject to the gap detection of
+ * the {@link io.axoniq.axonserver.migration.migrators.EventMigrator}.
+ *
+ * @param <T> The type of event read
+ */
+public class RangedEventReader<T extends DomainEvent> implements AutoCloseable {
+
+    private final RangeQuery<T> query;
+    private final long maxIndex;
+    private final int rangeSize;
+    private final long[] splitPoints;
+    private final int threads;
+    private final ExecutorService readers;
+    private final Deque<Future<List<T>>> pendingRanges = new ArrayDeque<>();
+
+    private long nextRangeStart;
+    private int nextSplitPoint;
+    private long position;
+    private Iterator<T> currentRange = Collections.emptyIterator();
+
+    /**
+     * Creates a reader for the events after {@code lastToken} up to and including {@code maxIndex}.
+     *
+     * @param lastToken The global index of the last event processed
+     * @param maxIndex  The global index of the last event to read
+     * @param rangeSize The amount of global indexes read by a single query
+     * @param threads   The amount of ranges to read concurrently
+     * @param query     The query reading a single range
+     */
+    public RangedEventReader(long lastToken, long maxIndex, int rangeSize, int threads, RangeQuery<T> query) {
+        this(lastToken, maxIndex, rangeSize, null, threads, query);
+    }
+
+    /**
+     * Creates a reader for the events after {@code lastToken} up to and including {@code maxIndex}, in ranges ending
+     * at the given split points. Split points outside of that interval are ignored.
+     *
+     * @param lastToken   The global index of the last event processed
+     * @param maxIndex    The global index of the last event to read
+     * @param splitPoints The global indexes at which a range ends, in ascending order
+     * @param threads     The amount of ranges to read concurrently
+     * @param query       The query reading a single range
+     */
+    public RangedEventReader(long lastToken, long maxIndex, long[] splitPoints, int threads, RangeQuery<T> query) {
+        this(lastToken, maxIndex, 0, splitPoints, threads, query);
+    }
+
+    private RangedEventReader(long lastToken,
+                              long maxIndex,
+                              int rangeSize,
+                              long[] splitPoints,
+                              int threads,
+                              RangeQuery<T> query) {
+        this.query = query;
+        this.maxIndex = maxIndex;
+        this.rangeSize = rangeSize;
+        this.splitPoints = splitPoints;
+        this.threads = threads;
+        this.nextRangeStart = lastToken;
+        this.position = lastToken;
+        this.readers = Executors.newFixedThreadPool(threads, new AxonThreadFactory("ranged-event-reader"));
+    }
+
+    /**
+     * Returns the global index of the last event handed out by this reader. The reader can only continue from there.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns whether there are ranges left to read or hand out. Until then, the reading threads may use a connection
+     * each.
+     */
+    public boolean isReading() {
+        return currentRange.hasNext() || !pendingRanges.isEmpty() || nextRangeStart < maxIndex;
+    }
+
+    /**
+     * Takes the next events from the ranges, waiting for them to be read if needed. Returns an empty list once all
+     * ranges up to the maximum index have been handed out.
+     *
+     * @param batchSize The maximum amount of events to return
+     * @return The next events, in global index order
+     */
+    public List<T> next(int batchSize) {
+        List<T> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize) {
+            if (!currentRange.hasNext()) {
+                scheduleRanges();
+                Future<List<T>> range = pendingRanges.poll();
+                if (range == null) {
+                    break;
+                }
+                currentRange = await(range).iterator();
+                continue;
+            }
+            T event = currentRange.next();
+            batch.add(event);
+            position = event.getGlobalIndex();
+        }
+        return batch;
+    }
+
+    private void scheduleRanges() {
+        while (pendingRanges.size() < threads && nextRangeStart < maxIndex) {
+            long from = nextRangeStart;
+            long to = Math.min(nextRangeEnd(from), maxIndex);
+            pendingRanges.add(readers.submit(() -> query.find(from, to)));
+            nextRangeStart = to;
+        }
+    }
+
+    private long nextRangeEnd(long from) {
+        if (splitPoints == null) {
+            return from + rangeSize;
+        }
+        while (nextSplitPoint < splitPoints.length && splitPoints[nextSplitPoint] <= from) {
+            nextSplitPoint++;
+        }
+        return nextSplitPoint < splitPoints.length ? splitPoints[nextSplitPoint++] : maxIndex;
+    }
+
+    private List<T> await(Future<List<T>> range) {
+        try {
+            return range.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        readers.shutdownNow();
+    }
+
+    /**
+     * Reads the events of a single range of global indexes.
+     *
+     * @param <T> The type of event read
+     */
+    @FunctionalInterface
+    public interface RangeQuery<T> {
+
+        /**
+         * Finds the events with a global index after {@code fromExclusive}, up to and including {@code toInclusive},
+         * in global index order.
+         */
+        List<T> find(long fromExclusive, long toInclusive);
+    }
+}
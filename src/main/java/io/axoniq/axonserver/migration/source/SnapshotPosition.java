@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Position of the last snapshot migrated, used to read the snapshots after it. Contains the keys of both orders the
+ * snapshots can be read in: the timestamp and event identifier, and the primary key of aggregate identifier, sequence
+ * number and type. Sources reading snapshots from a stream of changes add the token to resume it after the snapshot.
+ * <p>
+ * Keys that are not known yet, because nothing was migrated or the position was saved by a version that did not keep
+ * them, are {@code null}. These are read as an empty string, which comes before all keys.
+ */
+@Getter
+@AllArgsConstructor
+@ToString
+public class SnapshotPosition {
+
+    private final String timestamp;
+    private final String eventIdentifier;
+    private final String aggregateIdentifier;
+    private final long sequenceNumber;
+    private final String type;
+    private final String resumeToken;
+
+    /**
+     * Returns the position of the given snapshot.
+     */
+    public static SnapshotPosition of(SnapshotEvent snapshot) {
+        return new SnapshotPosition(snapshot.getTimeStamp(),
+                                    snapshot.getEventIdentifier(),
+                                    snapshot.getAggregateIdentifier(),
+                                    snapshot.getSequenceNumber(),
+                                    snapshot.getType(),
+                                    snapshot.getResumeToken());
+    }
+
+    /**
+     * Returns the given key, or an empty string to start before all keys when it is not known.
+     */
+    public static String nonNull(String key) {
+        return key == null ? "" : key;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source;
+
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses the ISO-8601 timestamps stored by the Axon event stores into epoch milliseconds.
+ * <p>
+ * The timestamps written by Axon have a fixed layout: {@code yyyy-MM-ddTHH:mm:ss}, an optional fraction, and either
+ * {@code Z} or an offset like {@code +01:00}. These are parsed directly from the characters, without creating any
+ * intermediate objects. Anything else is parsed by the JDK, with {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME} or
+ * the formatter the source used before.
+ */
+public final class TimestampParser {
+
+    private static final long NOT_PARSED = Long.MIN_VALUE;
+    private static final int[] DAYS_IN_MONTH = {31, 29, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
+    private TimestampParser() {
+    }
+
+    /**
+     * Parses the given timestamp into milliseconds since the epoch. A {@code null} timestamp is returned as 0.
+     *
+     * @param timestamp The timestamp to parse
+     * @return The milliseconds since the epoch
+     * @throws java.time.format.DateTimeParseException if the timestamp is not a valid ISO-8601 date-time with offset
+     */
+    public static long toEpochMillis(String timestamp) {
+        return toEpochMillis(timestamp, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
+    }
+
+    /**
+     * Parses the given timestamp into milliseconds since the epoch, using the given formatter for timestamps not in
+     * the layout written by Axon. A {@code null} timestamp is returned as 0.
+     *
+     * @param timestamp The timestamp to parse
+     * @param fallback  The formatter to parse other timestamps with
+     * @return The milliseconds since the epoch
+     * @throws java.time.format.DateTimeParseException if the timestamp cannot be parsed by the fallback formatter
+     */
+    public static long toEpochMillis(String timestamp, DateTimeFormatter fallback) {
+        if (timestamp == null) {
+            return 0;
+        }
+        long millis = parse(timestamp);
+        if (millis != NOT_PARSED) {
+            return millis;
+        }
+        return fallback.parse(timestamp, Instant::from).toEpochMilli();
+    }
+
+    private static long parse(String s) {
+        int length = s.length();
+        if (length < 20 || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':') {
+            return NOT_PARSED;
+        }
+        int year = digits(s, 0, 4);
+        int month = digits(s, 5, 2);
+        int day = digits(s, 8, 2);
+        int hour = digits(s, 11, 2);
+        int minute = digits(s, 14, 2);
+        int second = digits(s, 17, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)
+                || hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return NOT_PARSED;
+        }
+        int position = 19;
+        int millis = 0;
+        if (s.charAt(position) == '.') {
+            int start = ++position;
+            while (position < length && isDigit(s.charAt(position))) {
+                if (position - start < 3) {
+                    millis = millis * 10 + (s.charAt(position) - '0');
+                }
+                position++;
+            }
+            int fractionDigits = position - start;
+            if (fractionDigits == 0 || fractionDigits > 9) {
+                return NOT_PARSED;
+            }
+            for (int i = fractionDigits; i < 3; i++) {
+                millis *= 10;
+            }
+        }
+        int offsetSeconds;
+        if (position == length - 1 && s.charAt(position) == 'Z') {
+            offsetSeconds = 0;
+        } else if (position == length - 6 && (s.charAt(position) == '+' || s.charAt(position) == '-')
+                && s.charAt(position + 3) == ':') {
+            int offsetHours = digits(s, position + 1, 2);
+            int offsetMinutes = digits(s, position + 4, 2);
+            if (offsetHours < 0 || offsetHours > 18 || offsetMinutes < 0 || offsetMinutes > 59) {
+                return NOT_PARSED;
+            }
+            offsetSeconds = (offsetHours * 3600 + offsetMinutes * 60) * (s.charAt(position) == '-' ? -1 : 1);
+        } else {
+            return NOT_PARSED;
+        }
+        long epochSeconds = epochDay(year, month, day) * 86400L + hour * 3600 + minute * 60 + second - offsetSeconds;
+        return epochSeconds * 1000 + millis;
+    }
+
+    /**
+     * Returns the value of the given amount of decimal digits starting at {@code start}, or -1 if any of them is not a
+     * digit.
+     */
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = s.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 2 && !isLeapYear(year)) {
+            return 28;
+        }
+        return DAYS_IN_MONTH[month - 1];
+    }
+
+    private static boolean isLeapYear(int year) {
+        return (year & 3) == 0 && (year % 100 != 0 || year % 400 == 0);
+    }
+
+    /**
+     * Returns the days since 1970-01-01 of the given date in the proleptic Gregorian calendar.
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+}
@@ -1,21 +1,24 @@
 package io.axoniq.axonserver.migration.source.axonserver;
 
+import com.google.protobuf.ByteString;
+import io.axoniq.axonserver.grpc.MetaDataValue;
+import io.axoniq.axonserver.grpc.event.Event;
 import io.axoniq.axonserver.grpc.event.EventWithToken;
 import io.axoniq.axonserver.migration.source.DomainEvent;
 import org.axonframework.axonserver.connector.util.GrpcMetaDataConverter;
 import org.axonframework.messaging.MetaData;
 import org.axonframework.serialization.Serializer;
 
+import java.util.Map;
+
 public class AxonServerBackedDomainEvent implements DomainEvent {
 
     private final EventWithToken eventWithToken;
     private final Serializer serializer;
-    private final GrpcMetaDataConverter grpcMetaDataConverter;
 
     public AxonServerBackedDomainEvent(EventWithToken eventWithToken, Serializer serializer) {
         this.eventWithToken = eventWithToken;
         this.serializer = serializer;
-        this.grpcMetaDataConverter = new GrpcMetaDataConverter(serializer);
     }
 
     @Override
@@ -63,9 +66,24 @@ public class AxonServerBackedDomainEvent implements DomainEvent {
         return eventWithToken.getEvent().getPayload().getData().toByteArray();
     }
 
+    @Override
+    public ByteString getPayloadAsByteString() {
+        return eventWithToken.getEvent().getPayload().getData();
+    }
+
+    @Override
+    public Event getAxonServerEvent() {
+        return eventWithToken.getEvent();
+    }
+
+    @Override
+    public Map<String, MetaDataValue> getMetaDataValues() {
+        return eventWithToken.getEvent().getMetaDataMap();
+    }
+
     @Override
     public byte[] getMetaData() {
-        MetaData javaRepresentation = grpcMetaDataConverter.convert(eventWithToken.getEvent().getMetaDataMap());
+        MetaData javaRepresentation = new GrpcMetaDataConverter(serializer).convert(eventWithToken.getEvent().getMetaDataMap());
         return serializer.serialize(javaRepresentation, byte[].class).getData();
     }
 }
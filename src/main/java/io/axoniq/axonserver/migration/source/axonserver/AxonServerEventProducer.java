@@ -18,61 +18,82 @@ package io.axoniq.axonserver.migration.source.axonserver;
 
 import io.axoniq.axonserver.connector.event.EventStream;
 import io.axoniq.axonserver.grpc.event.EventWithToken;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.source.EventPosition;
 import io.axoniq.axonserver.migration.source.EventProducer;
 import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
 import lombok.extern.slf4j.Slf4j;
+import org.axonframework.axonserver.connector.AxonServerConfiguration;
 import org.axonframework.axonserver.connector.AxonServerConnectionManager;
 import org.axonframework.serialization.Serializer;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Produces events when defining the migration source as {@code AXONSERVER}.
+ * <p>
+ * The events are read through a single event stream. It is opened with the permits of the event flow control of the
+ * source configuration, and asks for {@code nr-of-new-permits} more each time that many have been used, so Axon Server
+ * keeps sending while a batch is being stored. The events read are passed through to the destination as they are.
+ * When asked for the events after another token than the last one returned, the stream is opened again at that token.
+ * <p>
+ * Only the first event of a batch is waited for. When migrating continuously, that wait is as short as the shortest
+ * tail poll interval, as the migrator polls again itself. Otherwise it is waited for up to 30 seconds, as an empty batch
+ * ends the migration. The events that follow are taken as far as the stream has them, so a partial batch is returned
+ * as soon as the stream runs dry.
  */
 @Slf4j
 @Component
 @ConditionalOnProperty(value = "axoniq.migration.source", havingValue = "AXONSERVER")
 public class AxonServerEventProducer implements EventProducer {
 
+    private static final long FIRST_EVENT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
     private final AxonServerConnectionManager connectionManager;
+    private final AxonServerConfiguration configuration;
     private final Serializer serializer;
+    private final MigrationBaseProperties properties;
     private EventStream eventStream;
-    private Long lastRequestedEventToken = -1L;
+    private long lastReturnedToken = -1L;
 
     public AxonServerEventProducer(
             @Qualifier("originAxonServerConnectionManager") AxonServerConnectionManager connectionManager,
-            Serializer serializer
+            @Qualifier("sourceAxonServerConfiguration") AxonServerConfiguration configuration,
+            Serializer serializer,
+            MigrationBaseProperties properties
     ) {
         this.connectionManager = connectionManager;
+        this.configuration = configuration;
         this.serializer = serializer;
+        this.properties = properties;
     }
 
     @Override
-    public List<? extends AxonServerBackedDomainEvent> findEvents(long lastToken, int batchSize) {
-        if (lastToken < lastRequestedEventToken) {
-            // We need to reinitialize the stream
-            if (eventStream != null && !eventStream.isClosed()) {
-                eventStream.close();
-            }
-            eventStream = connectionManager.getConnection().eventChannel().openStream(lastToken, batchSize);
+    public List<? extends AxonServerBackedDomainEvent> findEvents(EventPosition position, int batchSize) {
+        long lastToken = position.getGlobalIndex();
+        if (eventStream != null && !eventStream.isClosed() && lastToken != lastReturnedToken) {
+            // Not continuing after the last event returned, like after a failed store. Start over from the position.
+            eventStream.close();
         }
         if (eventStream == null || eventStream.isClosed()) {
-            eventStream = connectionManager.getConnection().eventChannel().openStream(lastToken, batchSize);
+            eventStream = openStream(lastToken, batchSize);
         }
-        lastRequestedEventToken = lastToken;
 
-        List<AxonServerBackedDomainEvent> batch = new LinkedList<>();
+        List<AxonServerBackedDomainEvent> batch = new ArrayList<>(batchSize);
         while (batch.size() < batchSize) {
             try {
-                EventWithToken eventWithToken = eventStream.nextIfAvailable(30, TimeUnit.SECONDS);
+                EventWithToken eventWithToken = batch.isEmpty()
+                        ? eventStream.nextIfAvailable(firstEventTimeoutMillis(), TimeUnit.MILLISECONDS)
+                        : eventStream.nextIfAvailable();
                 if (eventWithToken == null) {
-                    // No event available. Stop polling
+                    // No event available. Return what we have
                     break;
                 }
                 batch.add(new AxonServerBackedDomainEvent(eventWithToken, serializer));
@@ -80,11 +101,24 @@ public class AxonServerEventProducer implements EventProducer {
                 throw new RuntimeException(e);
             }
         }
+        lastReturnedToken = batch.isEmpty() ? lastToken : batch.get(batch.size() - 1).getGlobalIndex();
         return batch;
     }
 
+    private long firstEventTimeoutMillis() {
+        return properties.isContinuous() ? properties.getTailPollMinMillis() : FIRST_EVENT_TIMEOUT_MILLIS;
+    }
+
+    private EventStream openStream(long lastToken, int batchSize) {
+        AxonServerConfiguration.FlowControlConfiguration flowControl = configuration.getEventFlowControl();
+        int permits = Math.max(batchSize, flowControl.getPermits());
+        int refillBatch = Math.min(permits, flowControl.getNrOfNewPermits());
+        log.debug("Opening event stream after token {} with {} permits, refilled by {}", lastToken, permits, refillBatch);
+        return connectionManager.getConnection().eventChannel().openStream(lastToken, permits, refillBatch);
+    }
+
     @Override
-    public List<? extends SnapshotEvent> findSnapshots(String lastProcessedTimestamp, int batchSize) {
+    public List<? extends SnapshotEvent> findSnapshots(SnapshotPosition position, int batchSize) {
         // Unfortunately, not possible with Axon Server.
         return Collections.emptyList();
     }
@@ -17,13 +17,13 @@
 package io.axoniq.axonserver.migration.source.jpa;
 
 import io.axoniq.axonserver.migration.source.BaseEvent;
+import io.axoniq.axonserver.migration.source.TimestampParser;
 
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import jakarta.persistence.Basic;
 import jakarta.persistence.Column;
 import jakarta.persistence.Lob;
 import jakarta.persistence.MappedSuperclass;
+import jakarta.persistence.Transient;
 
 /**
  * @author Marc Gathier
@@ -59,6 +59,8 @@ public class BaseEventEntry implements BaseEvent {
             length = 10000
     )
     private byte[] metaData;
+    @Transient
+    private long timeStampMillis = Long.MIN_VALUE;
 
 
     public String getEventIdentifier() {
@@ -74,10 +76,10 @@ public class BaseEventEntry implements BaseEvent {
     }
 
     public long getTimeStampAsLong() {
-        if( timeStamp == null) return 0;
-        ZonedDateTime zonedDateTime = ZonedDateTime.parse(timeStamp, DateTimeFormatter.ISO_OFFSET_DATE_TIME);
-        return zonedDateTime.toInstant().toEpochMilli();
-
+        if (timeStampMillis == Long.MIN_VALUE) {
+            timeStampMillis = TimestampParser.toEpochMillis(timeStamp);
+        }
+        return timeStampMillis;
     }
 
 
@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.source.jpa;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads events through a single forward-only cursor, instead of querying the database for every batch. The cursor is
+ * opened in a {@link StatelessSession}, so the events are never managed by a persistence context.
+ * <p>
+ * The cursor covers the events up to the maximum global index at the moment it was opened. It is reopened from the
+ * last position once the renewal interval has passed, so the database does not have to keep the same snapshot for
+ * hours. Once it has been read to the end, an empty list is returned until asked for the events after a later
+ * position, found by the regular query per batch. Only then a new cursor is opened, so tailing does not query the
+ * maximum global index on top of every batch.
+ */
+@Slf4j
+class CursorEventReader implements AutoCloseable {
+
+    private final SessionFactory sessionFactory;
+    private final int fetchSize;
+    private final Duration renewalInterval;
+
+    private StatelessSession session;
+    private ScrollableResults<DomainEventEntry> results;
+    private long position = Long.MIN_VALUE;
+    private long readUntil = Long.MIN_VALUE;
+    private long openedAt;
+
+    CursorEventReader(SessionFactory sessionFactory, int fetchSize, Duration renewalInterval) {
+        this.sessionFactory = sessionFactory;
+        this.fetchSize = fetchSize;
+        this.renewalInterval = renewalInterval;
+    }
+
+    /**
+     * Takes the next events from the cursor, (re)opening it when needed.
+     *
+     * @param lastToken The global index of the last event processed
+     * @param batchSize The maximum amount of events to return
+     * @return The next events, in global index order
+     */
+    List<DomainEventEntry> next(long lastToken, int batchSize) {
+        if (results == null && lastToken >= position && lastToken <= readUntil) {
+            // Read to the end already, and no events after it were found since
+            return Collections.emptyList();
+        }
+        if (results == null || position != lastToken
+                || System.currentTimeMillis() - openedAt > renewalInterval.toMillis()) {
+            open(lastToken);
+        }
+        if (results == null) {
+            return Collections.emptyList();
+        }
+        List<DomainEventEntry> batch = new ArrayList<>(batchSize);
+        while (batch.size() < batchSize && results.next()) {
+            DomainEventEntry entry = results.get();
+            batch.add(entry);
+            position = entry.getGlobalIndex();
+        }
+        if (batch.isEmpty()) {
+            close();
+        }
+        return batch;
+    }
+
+    /**
+     * Returns whether the cursor, and with it a connection, is open.
+     */
+    boolean isOpen() {
+        return session != null;
+    }
+
+    private void open(long lastToken) {
+        close();
+        session = sessionFactory.openStatelessSession();
+        session.beginTransaction();
+        Long maxIndex = session.createNamedSelectionQuery("DomainEventEntry.maxGlobalIndex", Long.class)
+                               .getSingleResult();
+        if (maxIndex == null || maxIndex <= lastToken) {
+            close();
+            position = lastToken;
+            readUntil = lastToken;
+            return;
+        }
+        log.debug("Opening cursor for events after global index {} up to {}", lastToken, maxIndex);
+        results = session.createNamedSelectionQuery("DomainEventEntry.findByGlobalIndexRange", DomainEventEntry.class)
+                         .setParameter("fromToken", lastToken)
+                         .setParameter("toToken", maxIndex)
+                         .setFetchSize(fetchSize)
+                         .scroll(ScrollMode.FORWARD_ONLY);
+        position = lastToken;
+        readUntil = maxIndex;
+        openedAt = System.currentTimeMillis();
+    }
+
+    @Override
+    public void close() {
+        if (results != null) {
+            results.close();
+            results = null;
+        }
+        if (session != null) {
+            if (session.getTransaction().isActive()) {
+                session.getTransaction().rollback();
+            }
+            session.close();
+            session = null;
+        }
+    }
+}
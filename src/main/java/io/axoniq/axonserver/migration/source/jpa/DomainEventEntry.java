@@ -39,7 +39,10 @@ import jakarta.persistence.Table;
         )}
 )
 @NamedQuery(name = "DomainEventEntry.findByGlobalIndex", query = "select e from DomainEventEntry e where e.globalIndex > :lastToken order by e.globalIndex asc")
+@NamedQuery(name = "DomainEventEntry.findByGlobalIndexRange", query = "select e from DomainEventEntry e where e.globalIndex > :fromToken and e.globalIndex <= :toToken order by e.globalIndex asc")
+@NamedQuery(name = "DomainEventEntry.findByGlobalIndexes", query = "select e from DomainEventEntry e where e.globalIndex in :globalIndexes order by e.globalIndex asc")
 @NamedQuery(name = "DomainEventEntry.maxGlobalIndex", query = "select max(e.globalIndex) from DomainEventEntry e")
+@NamedQuery(name = "DomainEventEntry.lastGlobalIndexBefore", query = "select e.globalIndex from DomainEventEntry e where e.timeStamp < :timeStamp order by e.globalIndex desc")
 @NamedQuery(name = "DomainEventEntry.minGlobalIndex", query = "select min(e.globalIndex) from DomainEventEntry e")
 public class DomainEventEntry extends BaseEventEntry implements DomainEvent {
     @Id
@@ -16,6 +16,7 @@
 
 package io.axoniq.axonserver.migration.source.jpa;
 
+import com.zaxxer.hikari.HikariDataSource;
 import org.hibernate.boot.model.naming.CamelCaseToUnderscoresNamingStrategy;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,7 +36,6 @@ import org.springframework.transaction.PlatformTransactionManager;
 import java.util.HashMap;
 import java.util.Map;
 import jakarta.persistence.EntityManagerFactory;
-import javax.sql.DataSource;
 
 /**
  * @author Marc Gathier
@@ -80,10 +80,15 @@ public class EventStoreDBConfiguration {
         return new JpaTransactionManager(barEntityManagerFactory);
     }
 
+    /**
+     * The connection pool of the event store. Its settings, like the {@code maximum-pool-size}, are bound from
+     * {@code axoniq.datasource.eventstore.hikari}.
+     */
     @Bean
     @Primary
-    public DataSource eventStoreDataSource() {
-        return eventStoreDataSourceProperties().initializeDataSourceBuilder().build();
+    @ConfigurationProperties("axoniq.datasource.eventstore.hikari")
+    public HikariDataSource eventStoreDataSource() {
+        return eventStoreDataSourceProperties().initializeDataSourceBuilder().type(HikariDataSource.class).build();
     }
 
 }
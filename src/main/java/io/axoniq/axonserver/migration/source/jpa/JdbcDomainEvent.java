@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.source.jpa;
+
+import com.google.protobuf.ByteString;
+import io.axoniq.axonserver.migration.source.DomainEvent;
+import io.axoniq.axonserver.migration.source.TimestampParser;
+
+/**
+ * Event read by the {@link JdbcEventReader}. Contains the same data as the {@link DomainEventEntry}, without being an
+ * entity.
+ */
+public class JdbcDomainEvent implements DomainEvent {
+
+    private final long globalIndex;
+    private final String type;
+    private final String aggregateIdentifier;
+    private final long sequenceNumber;
+    private final String eventIdentifier;
+    private final String timeStamp;
+    private final String payloadType;
+    private final String payloadRevision;
+    private final ByteString payload;
+    private final byte[] metaData;
+    private long timeStampMillis = Long.MIN_VALUE;
+
+    public JdbcDomainEvent(long globalIndex,
+                           String type,
+                           String aggregateIdentifier,
+                           long sequenceNumber,
+                           String eventIdentifier,
+                           String timeStamp,
+                           String payloadType,
+                           String payloadRevision,
+                           ByteString payload,
+                           byte[] metaData) {
+        this.globalIndex = globalIndex;
+        this.type = type;
+        this.aggregateIdentifier = aggregateIdentifier;
+        this.sequenceNumber = sequenceNumber;
+        this.eventIdentifier = eventIdentifier;
+        this.timeStamp = timeStamp;
+        this.payloadType = payloadType;
+        this.payloadRevision = payloadRevision;
+        this.payload = payload;
+        this.metaData = metaData;
+    }
+
+    @Override
+    public long getGlobalIndex() {
+        return globalIndex;
+    }
+
+    @Override
+    public String getType() {
+        return type;
+    }
+
+    @Override
+    public String getAggregateIdentifier() {
+        return aggregateIdentifier;
+    }
+
+    @Override
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    @Override
+    public String getEventIdentifier() {
+        return eventIdentifier;
+    }
+
+    @Override
+    public long getTimeStampAsLong() {
+        if (timeStampMillis == Long.MIN_VALUE) {
+            timeStampMillis = TimestampParser.toEpochMillis(timeStamp);
+        }
+        return timeStampMillis;
+    }
+
+    @Override
+    public String getPayloadType() {
+        return payloadType;
+    }
+
+    @Override
+    public String getPayloadRevision() {
+        return payloadRevision;
+    }
+
+    @Override
+    public byte[] getPayload() {
+        return payload.toByteArray();
+    }
+
+    @Override
+    public ByteString getPayloadAsByteString() {
+        return payload;
+    }
+
+    @Override
+    public byte[] getMetaData() {
+        return metaData;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.source.jpa;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Blob;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sql.DataSource;
+
+/**
+ * Reads events from the {@code domain_event_entry} table using plain JDBC, mapping each row directly to a
+ * {@link JdbcDomainEvent}. This skips the entity lifecycle and persistence context of the JPA queries.
+ * <p>
+ * The table and column names follow the same naming strategy as the {@link EventStoreDBConfiguration}: snake case by
+ * default, or the field names of the {@link DomainEventEntry} when {@code axoniq.migration.disable-naming-strategy} is
+ * set.
+ */
+class JdbcEventReader {
+
+    private static final String[] COLUMNS = {
+            "globalIndex", "type", "aggregateIdentifier", "sequenceNumber", "eventIdentifier",
+            "timeStamp", "payloadType", "payloadRevision", "payload", "metaData"
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String findByGlobalIndex;
+    private final String findByGlobalIndexRange;
+
+    JdbcEventReader(DataSource dataSource, boolean disableNamingStrategy) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        String table = name("DomainEventEntry", disableNamingStrategy);
+        String globalIndex = name("globalIndex", disableNamingStrategy);
+        StringBuilder select = new StringBuilder("select ");
+        for (int i = 0; i < COLUMNS.length; i++) {
+            select.append(i == 0 ? "" : ", ").append(name(COLUMNS[i], disableNamingStrategy));
+        }
+        select.append(" from ").append(table).append(" where ").append(globalIndex).append(" > ?");
+        String orderBy = " order by " + globalIndex + " asc";
+        this.findByGlobalIndex = select + orderBy;
+        this.findByGlobalIndexRange = select + " and " + globalIndex + " <= ?" + orderBy;
+    }
+
+    /**
+     * Finds the first {@code batchSize} events after the given global index.
+     */
+    List<JdbcDomainEvent> findEvents(long lastProcessedToken, int batchSize) {
+        return jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(findByGlobalIndex);
+            statement.setMaxRows(batchSize);
+            statement.setFetchSize(batchSize);
+            statement.setLong(1, lastProcessedToken);
+            return statement;
+        }, extractor());
+    }
+
+    /**
+     * Finds the events after {@code fromExclusive}, up to and including {@code toInclusive}.
+     */
+    List<JdbcDomainEvent> findEventsInRange(long fromExclusive, long toInclusive) {
+        return jdbcTemplate.query(findByGlobalIndexRange, extractor(), fromExclusive, toInclusive);
+    }
+
+    private ResultSetExtractor<List<JdbcDomainEvent>> extractor() {
+        return resultSet -> {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            boolean payloadIsBlob = isBlob(metaData, 9);
+            boolean metaDataIsBlob = isBlob(metaData, 10);
+            List<JdbcDomainEvent> events = new ArrayList<>();
+            while (resultSet.next()) {
+                events.add(new JdbcDomainEvent(resultSet.getLong(1),
+                                               resultSet.getString(2),
+                                               resultSet.getString(3),
+                                               resultSet.getLong(4),
+                                               resultSet.getString(5),
+                                               resultSet.getString(6),
+                                               resultSet.getString(7),
+                                               resultSet.getString(8),
+                                               byteString(resultSet, 9, payloadIsBlob),
+                                               bytes(resultSet, 10, metaDataIsBlob)));
+            }
+            return events;
+        };
+    }
+
+    /**
+     * Large objects can be stored out of line, for example as {@code oid} in PostgreSQL, which is how Hibernate maps
+     * the {@code @Lob} columns there. These need to be read as {@link Blob}.
+     */
+    private static boolean isBlob(ResultSetMetaData metaData, int column) throws SQLException {
+        return metaData.getColumnType(column) == Types.BLOB || "oid".equalsIgnoreCase(metaData.getColumnTypeName(column));
+    }
+
+    private static byte[] bytes(ResultSet resultSet, int column, boolean isBlob) throws SQLException {
+        if (!isBlob) {
+            return resultSet.getBytes(column);
+        }
+        Blob blob = resultSet.getBlob(column);
+        if (blob == null) {
+            return null;
+        }
+        try {
+            return blob.getBytes(1, (int) blob.length());
+        } finally {
+            blob.free();
+        }
+    }
+
+    /**
+     * Reads the column as a {@link ByteString}. Large objects are streamed into it, without first reading them into a
+     * single array.
+     */
+    private static ByteString byteString(ResultSet resultSet, int column, boolean isBlob) throws SQLException {
+        if (!isBlob) {
+            byte[] bytes = resultSet.getBytes(column);
+            return bytes == null ? ByteString.EMPTY : UnsafeByteOperations.unsafeWrap(bytes);
+        }
+        Blob blob = resultSet.getBlob(column);
+        if (blob == null) {
+            return ByteString.EMPTY;
+        }
+        try (InputStream stream = blob.getBinaryStream()) {
+            return ByteString.readFrom(stream);
+        } catch (IOException e) {
+            throw new SQLException("Could not read large object in column " + column, e);
+        } finally {
+            blob.free();
+        }
+    }
+
+    private static String name(String logicalName, boolean disableNamingStrategy) {
+        if (disableNamingStrategy) {
+            return logicalName;
+        }
+        StringBuilder physicalName = new StringBuilder();
+        for (char c : logicalName.toCharArray()) {
+            if (Character.isUpperCase(c) && physicalName.length() > 0) {
+                physicalName.append('_');
+            }
+            physicalName.append(Character.toLowerCase(c));
+        }
+        return physicalName.toString();
+    }
+}
@@ -17,20 +17,53 @@
 package io.axoniq.axonserver.migration.source.jpa;
 
 
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.MigrationBaseProperties.SnapshotOrder;
 import io.axoniq.axonserver.migration.source.DomainEvent;
+import io.axoniq.axonserver.migration.source.EventPosition;
 import io.axoniq.axonserver.migration.source.EventProducer;
+import io.axoniq.axonserver.migration.source.RangedEventReader;
 import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
 import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import javax.sql.DataSource;
+
+import static io.axoniq.axonserver.migration.source.SnapshotPosition.nonNull;
+import static org.axonframework.common.DateTimeUtils.formatInstant;
 
 /**
  * Produces events when defining the migration source as {@code RDBMS}. Queries the database using JPA to look up events
  * and snapshots, that can then be migrated.
+ * <p>
+ * When {@link MigrationBaseProperties#getParallelReaders()} is larger than one, the events older than
+ * {@link MigrationBaseProperties#getRecentMillis()} at that moment are read by a {@link RangedEventReader}, each reader
+ * using its own connection. Recent events are read one batch at a time, so gaps among them are still detected in
+ * order.
+ * <p>
+ * Alternatively, the {@code axoniq.migration.streamingCursor} property makes the producer read the events through a
+ * single {@link CursorEventReader}, instead of querying the database for every batch. The
+ * {@code axoniq.migration.rawJdbc} property makes the regular and ranged queries use the {@link JdbcEventReader}
+ * instead of JPA.
  *
  * @author Marc Gathier
  * @author Mitchell Herrijgers
@@ -43,9 +76,50 @@ public class JpaEventProducer implements EventProducer {
     @PersistenceContext(name = "eventstore")
     private EntityManager entityManager;
 
+    private final MigrationBaseProperties properties;
+    private final TransactionTemplate rangeTransactionTemplate;
+    private final CursorEventReader cursorEventReader;
+    private final JdbcEventReader jdbcEventReader;
+    private RangedEventReader<DomainEvent> rangedEventReader;
+    private boolean readingRecentEvents;
+
+    public JpaEventProducer(MigrationBaseProperties properties,
+                            @Qualifier("eventStoreTransactionManager") PlatformTransactionManager transactionManager,
+                            @Qualifier("eventStoreEntityManagerFactory") EntityManagerFactory entityManagerFactory,
+                            @Qualifier("eventStoreDataSource") DataSource dataSource,
+                            @Value("${axoniq.migration.disable-naming-strategy:false}") boolean disableNamingStrategy,
+                            @Value("${axoniq.migration.rawJdbc:false}") boolean rawJdbc,
+                            @Value("${axoniq.migration.streamingCursor:false}") boolean streamingCursor,
+                            @Value("${axoniq.migration.cursorFetchSize:1000}") int cursorFetchSize,
+                            @Value("${axoniq.migration.cursorRenewalSeconds:600}") int cursorRenewalSeconds) {
+        this.properties = properties;
+        this.rangeTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.rangeTransactionTemplate.setReadOnly(true);
+        this.cursorEventReader = streamingCursor
+                ? new CursorEventReader(entityManagerFactory.unwrap(SessionFactory.class),
+                                        cursorFetchSize,
+                                        Duration.ofSeconds(cursorRenewalSeconds))
+                : null;
+        this.jdbcEventReader = rawJdbc ? new JdbcEventReader(dataSource, disableNamingStrategy) : null;
+    }
 
     @Override
-    public List<? extends DomainEvent> findEvents(long lastProcessedToken, int batchSize) {
+    public List<? extends DomainEvent> findEvents(EventPosition position, int batchSize) {
+        long lastProcessedToken = position.getGlobalIndex();
+        if (properties.getParallelReaders() > 1) {
+            List<? extends DomainEvent> result = findEventsInRanges(lastProcessedToken, batchSize);
+            if (!result.isEmpty()) {
+                return result;
+            }
+        } else if (cursorEventReader != null) {
+            List<DomainEventEntry> result = cursorEventReader.next(lastProcessedToken, batchSize);
+            if (!result.isEmpty()) {
+                return result;
+            }
+        }
+        if (jdbcEventReader != null) {
+            return jdbcEventReader.findEvents(lastProcessedToken, batchSize);
+        }
         return entityManager.createNamedQuery("DomainEventEntry.findByGlobalIndex", DomainEventEntry.class)
                             .setParameter("lastToken", lastProcessedToken)
                             .setMaxResults(batchSize)
@@ -53,13 +127,121 @@ public class JpaEventProducer implements EventProducer {
     }
 
     @Override
-    public List<? extends SnapshotEvent> findSnapshots(String lastProcessedTimestamp, int batchSize) {
-        return entityManager.createNamedQuery("SnapshotEventEntry.findByTimestamp", SnapshotEventEntry.class)
-                            .setParameter("lastTimeStamp", lastProcessedTimestamp)
-                            .setMaxResults(batchSize)
+    public int getOpenConnections() {
+        if (rangedEventReader != null && rangedEventReader.isReading()) {
+            return properties.getParallelReaders();
+        }
+        return cursorEventReader != null && cursorEventReader.isOpen() ? 1 : 0;
+    }
+
+    /**
+     * Returns the parallel readers until the events before {@link MigrationBaseProperties#getRecentMillis()} have been
+     * read. The recent events are read one batch at a time, on a single connection.
+     */
+    @Override
+    public int getReadConnections() {
+        if (properties.getParallelReaders() > 1 && (rangedEventReader != null || !readingRecentEvents)) {
+            return properties.getParallelReaders();
+        }
+        return 1;
+    }
+
+    @Override
+    public List<? extends DomainEvent> findEventsByGlobalIndexes(long[] globalIndexes) {
+        if (globalIndexes.length == 0) {
+            return Collections.emptyList();
+        }
+        return entityManager.createNamedQuery("DomainEventEntry.findByGlobalIndexes", DomainEventEntry.class)
+                            .setParameter("globalIndexes",
+                                          LongStream.of(globalIndexes).boxed().collect(Collectors.toList()))
                             .getResultList();
     }
 
+    private List<? extends DomainEvent> findEventsInRanges(long lastProcessedToken, int batchSize) {
+        if (rangedEventReader != null && rangedEventReader.getPosition() != lastProcessedToken) {
+            closeRangedEventReader();
+        }
+        if (rangedEventReader == null) {
+            long maxIndex = getLastIndexBeforeRecent();
+            if (maxIndex - lastProcessedToken <= properties.getReadRangeSize()) {
+                readingRecentEvents = true;
+                return Collections.emptyList();
+            }
+            readingRecentEvents = false;
+            rangedEventReader = new RangedEventReader<>(lastProcessedToken,
+                                                        maxIndex,
+                                                        properties.getReadRangeSize(),
+                                                        properties.getParallelReaders(),
+                                                        this::findEventsInRange);
+        }
+        List<DomainEvent> result = rangedEventReader.next(batchSize);
+        if (result.isEmpty()) {
+            closeRangedEventReader();
+        }
+        return result;
+    }
+
+    private List<DomainEvent> findEventsInRange(long fromExclusive, long toInclusive) {
+        if (jdbcEventReader != null) {
+            return rangeTransactionTemplate.execute(
+                    status -> new ArrayList<>(jdbcEventReader.findEventsInRange(fromExclusive, toInclusive)));
+        }
+        return rangeTransactionTemplate.execute(status -> new ArrayList<>(entityManager
+                .createNamedQuery("DomainEventEntry.findByGlobalIndexRange", DomainEventEntry.class)
+                .setParameter("fromToken", fromExclusive)
+                .setParameter("toToken", toInclusive)
+                .getResultList()));
+    }
+
+    private void closeRangedEventReader() {
+        if (rangedEventReader != null) {
+            rangedEventReader.close();
+            rangedEventReader = null;
+        }
+    }
+
+    @PreDestroy
+    public void closeReaders() {
+        closeRangedEventReader();
+        if (cursorEventReader != null) {
+            cursorEventReader.close();
+        }
+    }
+
+    @Override
+    public List<? extends SnapshotEvent> findSnapshots(SnapshotPosition position, int batchSize) {
+        String latest = properties.isLatestSnapshotsOnly() ? "Latest" : "";
+        TypedQuery<SnapshotEventEntry> query;
+        if (properties.getSnapshotOrder() == SnapshotOrder.PRIMARY_KEY) {
+            query = entityManager.createNamedQuery("SnapshotEventEntry.find" + latest + "AfterPrimaryKey",
+                                                   SnapshotEventEntry.class)
+                                 .setParameter("aggregateIdentifier", nonNull(position.getAggregateIdentifier()))
+                                 .setParameter("sequenceNumber", position.getSequenceNumber())
+                                 .setParameter("type", nonNull(position.getType()));
+        } else {
+            query = entityManager.createNamedQuery("SnapshotEventEntry.find" + latest + "AfterTimestamp",
+                                                   SnapshotEventEntry.class)
+                                 .setParameter("timeStamp", position.getTimestamp())
+                                 .setParameter("eventIdentifier", nonNull(position.getEventIdentifier()));
+        }
+        return query.setMaxResults(batchSize)
+                    .getResultList();
+    }
+
+    /**
+     * Returns the global index of the last event older than {@link MigrationBaseProperties#getRecentMillis()}, or
+     * {@code -1} if there is none. The database walks the global index backwards from the end, so only the recent
+     * events are looked at.
+     */
+    private long getLastIndexBeforeRecent() {
+        Instant recent = Instant.now().minusMillis(properties.getRecentMillis());
+        List<Long> result = entityManager.createNamedQuery("DomainEventEntry.lastGlobalIndexBefore", Long.class)
+                                         .setParameter("timeStamp", formatInstant(recent))
+                                         .setMaxResults(1)
+                                         .getResultList();
+        return result.isEmpty() ? -1 : result.get(0);
+    }
+
     @Override
     public long getMinIndex() {
         return entityManager.createNamedQuery("DomainEventEntry.minGlobalIndex", Long.class)
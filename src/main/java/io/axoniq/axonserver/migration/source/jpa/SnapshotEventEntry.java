@@ -26,12 +26,21 @@ import jakarta.persistence.IdClass;
 import jakarta.persistence.NamedQuery;
 
 /**
- * Entity representing a snapshot in the RDBMS store.
+ * Entity representing a snapshot in the RDBMS store. The snapshots are read in pages using a keyset: each query
+ * continues after the keys of the last snapshot read, so every page is a range scan of the index on those keys. The
+ * {@code findAfterPrimaryKey} queries use the primary key, the {@code findAfterTimestamp} queries depend on an index on
+ * the timestamp and event identifier columns to avoid a sort.
+ * <p>
+ * The {@code findLatest} queries only select the snapshot with the highest sequence number of each aggregate, looking
+ * for later snapshots through the primary key.
  *
  * @author Marc Gathier
  */
 @Entity
-@NamedQuery(name = "SnapshotEventEntry.findByTimestamp", query = "select e from SnapshotEventEntry e where e.timeStamp >= :lastTimeStamp order by e.timeStamp asc, e.eventIdentifier")
+@NamedQuery(name = "SnapshotEventEntry.findAfterTimestamp", query = "select e from SnapshotEventEntry e where (e.timeStamp, e.eventIdentifier) > (:timeStamp, :eventIdentifier) order by e.timeStamp asc, e.eventIdentifier asc")
+@NamedQuery(name = "SnapshotEventEntry.findLatestAfterTimestamp", query = "select e from SnapshotEventEntry e where (e.timeStamp, e.eventIdentifier) > (:timeStamp, :eventIdentifier) and not exists (select 1 from SnapshotEventEntry s where s.aggregateIdentifier = e.aggregateIdentifier and s.sequenceNumber > e.sequenceNumber and s.type = e.type) order by e.timeStamp asc, e.eventIdentifier asc")
+@NamedQuery(name = "SnapshotEventEntry.findAfterPrimaryKey", query = "select e from SnapshotEventEntry e where (e.aggregateIdentifier, e.sequenceNumber, e.type) > (:aggregateIdentifier, :sequenceNumber, :type) order by e.aggregateIdentifier asc, e.sequenceNumber asc, e.type asc")
+@NamedQuery(name = "SnapshotEventEntry.findLatestAfterPrimaryKey", query = "select e from SnapshotEventEntry e where (e.aggregateIdentifier, e.sequenceNumber, e.type) > (:aggregateIdentifier, :sequenceNumber, :type) and not exists (select 1 from SnapshotEventEntry s where s.aggregateIdentifier = e.aggregateIdentifier and s.sequenceNumber > e.sequenceNumber and s.type = e.type) order by e.aggregateIdentifier asc, e.sequenceNumber asc, e.type asc")
 @IdClass(SnapshotEventEntry.PK.class)
 public class SnapshotEventEntry extends BaseEventEntry implements SnapshotEvent {
 
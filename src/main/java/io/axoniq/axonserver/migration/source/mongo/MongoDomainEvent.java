@@ -16,11 +16,14 @@
 
 package io.axoniq.axonserver.migration.source.mongo;
 
+import com.google.protobuf.ByteString;
 import io.axoniq.axonserver.migration.source.DomainEvent;
 import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.TimestampParser;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 
 /**
  * @author Stefan Dragisic
@@ -35,6 +38,30 @@ public class MongoDomainEvent implements DomainEvent, SnapshotEvent {
                             String type,
                             String aggregateIdentifier,
                             long sequenceNumber) {
+        this(timestamp,
+             ByteString.copyFromUtf8(serializedPayload),
+             serializedMetaData == null ? null : serializedMetaData.getBytes(StandardCharsets.UTF_8),
+             eventIdentifier,
+             payloadType,
+             payloadRevision,
+             type,
+             aggregateIdentifier,
+             sequenceNumber);
+    }
+
+    /**
+     * Creates an event holding its payload and metadata as the UTF-8 bytes they were stored as, which is how the
+     * {@link RawEventDecoder} reads them.
+     */
+    public MongoDomainEvent(String timestamp,
+                            ByteString serializedPayload,
+                            byte[] serializedMetaData,
+                            String eventIdentifier,
+                            String payloadType,
+                            String payloadRevision,
+                            String type,
+                            String aggregateIdentifier,
+                            long sequenceNumber) {
         this.timestamp = timestamp;
         this.serializedPayload = serializedPayload;
         this.serializedMetaData = serializedMetaData;
@@ -47,18 +74,20 @@ public class MongoDomainEvent implements DomainEvent, SnapshotEvent {
     }
 
     private String timestamp;
-    private String serializedPayload;
-    private String serializedMetaData;
+    private ByteString serializedPayload;
+    private byte[] serializedMetaData;
     private String eventIdentifier;
     private String payloadType;
     private String payloadRevision;
     private String type;
     private String aggregateIdentifier;
     private long sequenceNumber;
+    private long timestampMillis = Long.MIN_VALUE;
+    private String resumeToken;
 
     @Override
     public long getGlobalIndex() {
-        return Instant.parse(timestamp).toEpochMilli();
+        return getTimeStampAsLong();
     }
 
     @Override
@@ -88,7 +117,10 @@ public class MongoDomainEvent implements DomainEvent, SnapshotEvent {
 
     @Override
     public long getTimeStampAsLong() {
-        return Instant.parse(timestamp).toEpochMilli();
+        if (timestampMillis == Long.MIN_VALUE) {
+            timestampMillis = TimestampParser.toEpochMillis(timestamp, DateTimeFormatter.ISO_INSTANT);
+        }
+        return timestampMillis;
     }
 
     @Override
@@ -103,24 +135,31 @@ public class MongoDomainEvent implements DomainEvent, SnapshotEvent {
 
     @Override
     public byte[] getPayload() {
-        return serializedPayload.getBytes(StandardCharsets.UTF_8);
+        return serializedPayload.toByteArray();
+    }
+
+    @Override
+    public ByteString getPayloadAsByteString() {
+        return serializedPayload;
     }
 
     @Override
     public byte[] getMetaData() {
-        return serializedMetaData.getBytes(StandardCharsets.UTF_8);
+        return serializedMetaData;
     }
 
     public void setTimestamp(String timestamp) {
         this.timestamp = timestamp;
+        this.timestampMillis = Long.MIN_VALUE;
     }
 
     public void setSerializedPayload(String serializedPayload) {
-        this.serializedPayload = serializedPayload;
+        this.serializedPayload = ByteString.copyFromUtf8(serializedPayload);
     }
 
     public void setSerializedMetaData(String serializedMetaData) {
-        this.serializedMetaData = serializedMetaData;
+        this.serializedMetaData = serializedMetaData == null ? null
+                : serializedMetaData.getBytes(StandardCharsets.UTF_8);
     }
 
     public void setEventIdentifier(String eventIdentifier) {
@@ -137,6 +176,7 @@ public class MongoDomainEvent implements DomainEvent, SnapshotEvent {
 
     public void setGlobalIndex(long timestamp) {
         this.timestamp = Instant.ofEpochMilli(timestamp).toString();
+        this.timestampMillis = timestamp;
     }
 
     public void setType(String type) {
@@ -150,4 +190,13 @@ public class MongoDomainEvent implements DomainEvent, SnapshotEvent {
     public void setSequenceNumber(long sequenceNumber) {
         this.sequenceNumber = sequenceNumber;
     }
+
+    @Override
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    public void setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
 }
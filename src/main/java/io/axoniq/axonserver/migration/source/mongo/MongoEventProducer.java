@@ -14,15 +14,35 @@
  * limitations under the License.
  */
 
+
 package io.axoniq.axonserver.migration.source.mongo;
 
-import com.mongodb.BasicDBObject;
-import com.mongodb.client.FindIterable;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoChangeStreamCursor;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
+import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.MigrationBaseProperties.SnapshotOrder;
+import io.axoniq.axonserver.migration.source.EventPosition;
 import io.axoniq.axonserver.migration.source.EventProducer;
+import io.axoniq.axonserver.migration.source.RangedEventReader;
 import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import io.axoniq.axonserver.migration.source.TimestampParser;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
 import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.conversions.Bson;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -30,121 +50,534 @@ import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
 
 import static com.mongodb.client.model.Filters.*;
+import static io.axoniq.axonserver.migration.source.SnapshotPosition.nonNull;
 import static org.axonframework.common.DateTimeUtils.formatInstant;
 
 /**
  * Produces events when defining the migration source as {@code MONGO}. Queries the database using the MongoTemplate to
  * look up events and snapshots, that can then be migrated.
+ * <p>
+ * The events and snapshots are first read through a cursor on the documents older than the look-back period at the
+ * moment it was opened. In continuous mode, the producer then switches to a change stream on the collection, starting
+ * at that same moment, so documents inserted afterwards are migrated as they come in. The resume token of the change
+ * stream is stored with the checkpoint, so a next run continues the stream where it stopped. Change streams require a
+ * replica set; setting {@code axoniq.migration.changeStreams} to {@code false} disables them.
+ * <p>
+ * With more than one {@link MigrationBaseProperties#getParallelReaders() parallel reader}, the older events are read
+ * by a {@link RangedEventReader} instead, in ranges of timestamps between split points sampled from the collection.
+ * Both events stored a document per event and a document per commit are supported.
+ * <p>
+ * The documents are decoded by the {@link RawEventDecoder}, straight from their BSON bytes, and only the fields it uses
+ * are requested from the database. Commit documents can be unwound into their events by the database as well, by
+ * setting {@code axoniq.migration.unwindCommits}.
+ * <p>
+ * The global index of an event is its timestamp, so events are not checked for gaps. The events are read sorted on
+ * timestamp and sequence number, which the index Axon Framework creates on these fields serves. Events sharing both are
+ * ordered by aggregate identifier by the {@link OrderedEventCursor}. The checkpoint holds the aggregate identifier and
+ * sequence number of the last event migrated as well, so a next run continues right after that event. The same goes
+ * for a run asking for the events after another position than the last event returned, such as its checkpoint after a
+ * failed store. Setting {@code axoniq.migration.createResumeIndex} creates the index on timestamp and sequence number
+ * when a store lacks it.
  *
  * @author Stefan Dragisic
  */
 @Component
 @ConditionalOnProperty(value = "axoniq.migration.source", havingValue = "MONGO")
+@Slf4j
 public class MongoEventProducer implements EventProducer {
 
+    private static final String EVENTS = "domainevents";
+    private static final String SNAPSHOTS = "snapshotevents";
+    private static final int MAX_RANGES = 10000;
+    private static final int SAMPLES_PER_RANGE = 4;
+
     private final MongoTemplate template;
+    private final MigrationBaseProperties properties;
+    private final boolean changeStreams;
+    private final boolean unwindCommits;
+    private final boolean createResumeIndex;
 
-    private FindIterable<Document> eventsCursor = null;
-    MongoCursor<Document> eventsIterator = null;
+    private OrderedEventCursor eventsIterator = null;
+    private Instant eventsReadUntil;
+    private MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> eventsStream;
+    private RangedEventReader<MongoDomainEvent> rangedEventReader;
+    private Boolean documentPerCommit;
+    private OrderedEventCursor.ResumePosition resumePosition;
+    private EventPosition lastEventPosition;
 
-    private FindIterable<Document> snapshotCursor = null;
-    MongoCursor<Document> snapshotIterator = null;
+    private MongoIterable<RawBsonDocument> snapshotCursor = null;
+    MongoCursor<RawBsonDocument> snapshotIterator = null;
+    private Instant snapshotsReadUntil;
+    private MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> snapshotsStream;
 
 
     final Duration LOOK_BACK_DURATION;
     final Duration SNAPSHOTS_LOOK_BACK_DURATION;
 
     public MongoEventProducer(MongoTemplate template,
+                              MigrationBaseProperties properties,
                               @Value("${axoniq.migration.eventsLookBackSeconds:10}") int eventsLookBackSeconds,
-                              @Value("${axoniq.migration.snapshotsLookBackSeconds:15}") int snapshotsLookBackSeconds) {
+                              @Value("${axoniq.migration.snapshotsLookBackSeconds:15}") int snapshotsLookBackSeconds,
+                              @Value("${axoniq.migration.changeStreams:true}") boolean changeStreams,
+                              @Value("${axoniq.migration.unwindCommits:false}") boolean unwindCommits,
+                              @Value("${axoniq.migration.createResumeIndex:false}") boolean createResumeIndex) {
         this.template = template;
+        this.properties = properties;
+        this.changeStreams = changeStreams;
+        this.unwindCommits = unwindCommits;
+        this.createResumeIndex = createResumeIndex;
         LOOK_BACK_DURATION = Duration.ofSeconds(eventsLookBackSeconds);
         SNAPSHOTS_LOOK_BACK_DURATION = Duration.ofSeconds(snapshotsLookBackSeconds);
     }
 
     @Override
-    public List<? extends MongoDomainEvent> findEvents(long lastToken, int batchSize) {
+    public boolean hasSequentialGlobalIndexes() {
+        return false;
+    }
+
+    /**
+     * Returns the connections of the parallel readers while they are reading. The single cursor and the change streams
+     * only use a connection while fetching the next batch.
+     */
+    @Override
+    public int getOpenConnections() {
+        return rangedEventReader != null && rangedEventReader.isReading() ? properties.getParallelReaders() : 0;
+    }
+
+    /**
+     * Returns the parallel readers while the events older than the look-back period can still be read in ranges. The
+     * change streams read one batch at a time.
+     */
+    @Override
+    public int getReadConnections() {
+        boolean readingRanges = rangedEventReader != null || (eventsReadUntil == null && eventsStream == null);
+        return properties.getParallelReaders() > 1 && readingRanges ? properties.getParallelReaders() : 1;
+    }
+
+    /**
+     * Continues the cursor or change stream when reading after the last event returned. Otherwise, for example when a
+     * migration restarts from its checkpoint after a failed store, these are opened again at the given position.
+     */
+    @Override
+    public List<? extends MongoDomainEvent> findEvents(EventPosition position, int batchSize) {
+        if (lastEventPosition != null && !lastEventPosition.equals(position)) {
+            log.info("Reading events again after {}", position);
+            closeEvents();
+        }
+        List<MongoDomainEvent> results = readEvents(position, batchSize);
+        if (results.isEmpty()) {
+            lastEventPosition = position;
+        } else {
+            MongoDomainEvent last = results.get(results.size() - 1);
+            lastEventPosition = EventPosition.of(last.getGlobalIndex(), last);
+        }
+        return results;
+    }
+
+    private List<MongoDomainEvent> readEvents(EventPosition position, int batchSize) {
+        if (eventsStream != null) {
+            return getResults(eventsStream, batchSize);
+        }
+
+        if (eventsReadUntil == null) {
+            String resumeToken = isTailing() ? position.getResumeToken() : null;
+            if (resumeToken != null) {
+                eventsStream = watch(EVENTS, "timestamp", resumeToken, null, batchSize);
+                return getResults(eventsStream, batchSize);
+            }
+            openEvents(position, batchSize);
+        }
+
+        List<MongoDomainEvent> results = rangedEventReader != null
+                ? rangedEventReader.next(batchSize)
+                : eventsIterator.next(batchSize);
+        if (results.isEmpty() && isTailing()) {
+            log.info("Read all events before {}, continuing with a change stream", eventsReadUntil);
+            closeEventReaders();
+            eventsStream = watch(EVENTS, timestampField(), null, eventsReadUntil, batchSize);
+            return getResults(eventsStream, batchSize);
+        }
+        return results;
+    }
+
+    /**
+     * Opens the cursor on the events older than the look-back period. With more than one
+     * {@link MigrationBaseProperties#getParallelReaders() parallel reader}, these are read in ranges of timestamps
+     * instead, each range through its own cursor.
+     */
+    private void openEvents(EventPosition position, int batchSize) {
+        eventsReadUntil = Instant.now().minus(LOOK_BACK_DURATION);
+        createResumeIndex();
+        long lastToken = position.getGlobalIndex();
+        Bson resumeFilter = lastToken == -1 ? null : after(position);
+        if (properties.getParallelReaders() > 1) {
+            long maxIndex = eventsReadUntil.toEpochMilli() - 1;
+            long[] splitPoints = sampleSplitPoints(lastToken, maxIndex);
+            log.info("Reading events before {} in {} ranges, using {} cursors",
+                     eventsReadUntil, splitPoints.length + 1, properties.getParallelReaders());
+            OrderedEventCursor.ResumePosition firstRangeResumePosition = resumePosition;
+            rangedEventReader = new RangedEventReader<>(
+                    lastToken, maxIndex, splitPoints, properties.getParallelReaders(),
+                    (from, to) -> from == lastToken
+                            ? findEventsInRange(from, to, resumeFilter, firstRangeResumePosition, batchSize)
+                            : findEventsInRange(from, to, null, null, batchSize));
+            return;
+        }
+
+        Bson filter = lt(timestampField(), formatInstant(eventsReadUntil));
+        if (resumeFilter != null) {
+            filter = and(resumeFilter, filter);
+        }
+        eventsIterator = new OrderedEventCursor(findEvents(filter, batchSize).iterator(), resumePosition);
+    }
+
+    /**
+     * Reads the events in a range of timestamps, in the same order as the single cursor would. The range starting at
+     * the last event migrated starts at that event instead, using the given filter and resume position.
+     */
+    private List<MongoDomainEvent> findEventsInRange(long fromExclusive,
+                                                     long toInclusive,
+                                                     Bson resumeFilter,
+                                                     OrderedEventCursor.ResumePosition rangeResumePosition,
+                                                     int batchSize) {
+        Bson from = resumeFilter != null
+                ? resumeFilter
+                : gt(timestampField(), formatInstant(Instant.ofEpochMilli(fromExclusive)));
+        Bson range = and(from, lte(timestampField(), formatInstant(Instant.ofEpochMilli(toInclusive))));
+        List<RawBsonDocument> documents = findEvents(range, batchSize).into(new ArrayList<>());
+        return OrderedEventCursor.decode(documents, rangeResumePosition);
+    }
+
+    /**
+     * Filter on the documents from the one holding the given event on, the last one migrated. When the position holds
+     * the aggregate identifier and sequence number of that event, the events before it in the same document, or in
+     * documents sharing its timestamp and sequence number, are left out through the {@link #resumePosition}. Otherwise,
+     * as with checkpoints of older versions, all events with that timestamp are read again.
+     * <p>
+     * With a document per commit, the commit holding the event is looked up, as it can have been migrated partially.
+     */
+    private Bson after(EventPosition position) {
+        String timestamp = formatInstant(Instant.ofEpochMilli(position.getGlobalIndex()));
+        if (position.getAggregateIdentifier() == null) {
+            log.info("Continuing with all events at {}, as the checkpoint does not identify the last event", timestamp);
+            return gte(timestampField(), timestamp);
+        }
+        long sequenceNumber = position.getSequenceNumber();
+        if (isDocumentPerCommit()) {
+            Document commit = template.getCollection(EVENTS)
+                                      .find(and(eq("aggregateIdentifier", position.getAggregateIdentifier()),
+                                                lte("firstSequenceNumber", position.getSequenceNumber()),
+                                                gte("lastSequenceNumber", position.getSequenceNumber())))
+                                      .projection(Projections.include("firstTimestamp", "firstSequenceNumber"))
+                                      .first();
+            if (commit == null) {
+                log.info("Continuing with all events at {}, as the commit of the last event was not found",
+                         timestamp);
+                return gte(timestampField(), timestamp);
+            }
+            timestamp = commit.getString("firstTimestamp");
+            sequenceNumber = ((Number) commit.get("firstSequenceNumber")).longValue();
+        }
+        resumePosition = new OrderedEventCursor.ResumePosition(timestamp, sequenceNumber, position);
+        // The bound on the timestamp alone lets MongoDB scan the index from there
+        return and(gte(timestampField(), timestamp),
+                   or(gt(timestampField(), timestamp), gte(sequenceNumberField(), sequenceNumber)));
+    }
+
+    /**
+     * Creates the index the events are read in order of, when enabled. Creating an index that exists already does
+     * nothing.
+     */
+    private void createResumeIndex() {
+        if (!createResumeIndex) {
+            return;
+        }
+        try {
+            template.getCollection(EVENTS).createIndex(Indexes.ascending(timestampField(), sequenceNumberField()));
+        } catch (MongoException e) {
+            log.warn("Could not create the index to read events in order, reading them without it: {}",
+                     e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the event documents matching the filter, in timestamp and sequence number order, with only the fields used
+     * by the {@link RawEventDecoder} and the {@link OrderedEventCursor}. When unwinding commits, the database returns a
+     * document per event instead of a document per commit, holding the timestamp and sequence number of its commit.
+     */
+    private MongoIterable<RawBsonDocument> findEvents(Bson filter, int batchSize) {
+        Bson sort = Sorts.ascending(timestampField(), sequenceNumberField());
+        if (unwindCommits && isDocumentPerCommit()) {
+            Document commitFields = new Document("firstTimestamp", "$firstTimestamp")
+                    .append("firstSequenceNumber", "$firstSequenceNumber");
+            return rawCollection(EVENTS).aggregate(Arrays.asList(
+                                                Aggregates.match(filter),
+                                                Aggregates.sort(sort),
+                                                Aggregates.unwind("$events"),
+                                                Aggregates.replaceRoot(new Document(
+                                                        "$mergeObjects", Arrays.asList("$events", commitFields))),
+                                                Aggregates.project(projection("",
+                                                                              "firstTimestamp",
+                                                                              "firstSequenceNumber"))))
+                                        .allowDiskUse(true)
+                                        .batchSize(batchSize);
+        }
+        return rawCollection(EVENTS).find(filter)
+                                    .projection(isDocumentPerCommit()
+                                                        ? projection("events.",
+                                                                     "firstTimestamp",
+                                                                     "firstSequenceNumber",
+                                                                     "aggregateIdentifier")
+                                                        : projection(""))
+                                    .sort(sort)
+                                    .batchSize(batchSize);
+    }
+
+    /**
+     * Includes only the fields read by the {@link RawEventDecoder}, under the given prefix, and the given other fields.
+     */
+    private static Bson projection(String prefix, String... otherFields) {
+        List<String> fields = new ArrayList<>(RawEventDecoder.FIELDS.size() + otherFields.length);
+        RawEventDecoder.FIELDS.forEach(field -> fields.add(prefix + field));
+        fields.addAll(Arrays.asList(otherFields));
+        return Projections.fields(Projections.include(fields), Projections.excludeId());
+    }
+
+    private MongoCollection<RawBsonDocument> rawCollection(String name) {
+        return template.getCollection(name).withDocumentClass(RawBsonDocument.class);
+    }
 
-        if (eventsCursor == null && lastToken == -1) {
-            MongoCollection<Document> eventCollection = template.getCollection("domainevents");
-            eventsCursor = eventCollection.find(and(lt("timestamp",
-                    formatInstant(Instant.now().minus(LOOK_BACK_DURATION)))));
-            eventsCursor = eventsCursor.sort(new BasicDBObject("timestamp", 1)
-                    .append("sequenceNumber", 1));
-            eventsCursor = eventsCursor.batchSize(batchSize);
-             eventsIterator = eventsCursor.iterator();
-        } else if (eventsCursor == null){
-            MongoCollection<Document> eventCollection = template.getCollection("domainevents");
-            eventsCursor = eventCollection.find(and(gte("timestamp",
-                    formatInstant(Instant.ofEpochMilli(lastToken))),
-                    and(lte("timestamp", Instant.now().minus(LOOK_BACK_DURATION).toString()))));
-            eventsCursor = eventsCursor.batchSize(batchSize);
-            eventsIterator = eventsCursor.iterator();
+    /**
+     * Picks the timestamps between which the ranges are read, so each range holds about
+     * {@link MigrationBaseProperties#getReadRangeSize()} documents. They are taken from a random sample of the
+     * documents, which MongoDB takes without scanning the collection.
+     */
+    private long[] sampleSplitPoints(long lastToken, long maxIndex) {
+        MongoCollection<Document> eventCollection = template.getCollection(EVENTS);
+        long documents = eventCollection.estimatedDocumentCount();
+        int ranges = (int) Math.min(MAX_RANGES, Math.max(properties.getParallelReaders(),
+                                                         documents / Math.max(1, properties.getReadRangeSize())));
+        int sampleSize = (int) Math.min(documents, (long) ranges * SAMPLES_PER_RANGE);
+        if (sampleSize == 0) {
+            return new long[0];
         }
+        String field = timestampField();
+        List<Long> sampled = new ArrayList<>(sampleSize);
+        eventCollection.aggregate(Arrays.asList(
+                               Aggregates.sample(sampleSize),
+                               Aggregates.project(Projections.fields(Projections.include(field),
+                                                                     Projections.excludeId()))))
+                       .forEach(document -> {
+                           String timestamp = document.getString(field);
+                           if (timestamp != null) {
+                               sampled.add(TimestampParser.toEpochMillis(timestamp, DateTimeFormatter.ISO_INSTANT));
+                           }
+                       });
+        long[] timestamps = sampled.stream()
+                                   .mapToLong(Long::longValue)
+                                   .filter(timestamp -> timestamp > lastToken && timestamp < maxIndex)
+                                   .sorted()
+                                   .toArray();
+        if (timestamps.length == 0) {
+            return timestamps;
+        }
+        return LongStream.range(1, ranges)
+                         .map(range -> timestamps[(int) (range * timestamps.length / ranges)])
+                         .distinct()
+                         .toArray();
+    }
+
+    /**
+     * Whether the events are stored a document per commit, as by the {@code DocumentPerCommitStorageStrategy}. The
+     * commit documents hold the timestamp and sequence number of their first event under different names.
+     */
+    private boolean isDocumentPerCommit() {
+        if (documentPerCommit == null) {
+            Document first = template.getCollection(EVENTS).find().limit(1).first();
+            documentPerCommit = first != null && first.containsKey("events");
+        }
+        return documentPerCommit;
+    }
+
+    private String timestampField() {
+        return isDocumentPerCommit() ? "firstTimestamp" : "timestamp";
+    }
+
+    private String sequenceNumberField() {
+        return isDocumentPerCommit() ? "firstSequenceNumber" : "sequenceNumber";
+    }
 
-       return getResults(eventsIterator,batchSize);
+    private void closeEventReaders() {
+        if (eventsIterator != null) {
+            eventsIterator.close();
+        }
+        if (rangedEventReader != null) {
+            rangedEventReader.close();
+        }
+    }
 
+    /**
+     * Closes the cursors and change stream on the events, so the next read opens them again.
+     */
+    private void closeEvents() {
+        closeEventReaders();
+        eventsIterator = null;
+        rangedEventReader = null;
+        resumePosition = null;
+        eventsReadUntil = null;
+        if (eventsStream != null) {
+            eventsStream.close();
+            eventsStream = null;
+        }
     }
 
     @Override
-    public List<? extends SnapshotEvent> findSnapshots(String lastProcessedTimestamp, int batchSize) {
-
-        if (snapshotCursor == null && Instant.parse(lastProcessedTimestamp).equals(Instant.ofEpochMilli(0))) {
-            MongoCollection<Document> snapshotCollection = template.getCollection("snapshotevents");
-            snapshotCursor = snapshotCollection.find(and(lt("timestamp",
-                    Instant.now().minus(SNAPSHOTS_LOOK_BACK_DURATION).toString())));
-            snapshotCursor = snapshotCursor.sort(new BasicDBObject("timestamp", 1)
-                    .append("sequenceNumber", 1));
-            snapshotCursor = snapshotCursor.batchSize(batchSize);
-            snapshotIterator = snapshotCursor.iterator();
+    public List<? extends SnapshotEvent> findSnapshots(SnapshotPosition position, int batchSize) {
+        if (snapshotsStream != null) {
+            return getResults(snapshotsStream, batchSize);
+        }
+
+        if (snapshotCursor == null && isTailing() && position.getResumeToken() != null) {
+            snapshotsStream = watch(SNAPSHOTS, "timestamp", position.getResumeToken(), null, batchSize);
+            return getResults(snapshotsStream, batchSize);
         } else if (snapshotCursor == null) {
-            MongoCollection<Document> snapshotCollection = template.getCollection("snapshotevents");
+            snapshotsReadUntil = Instant.now().minus(SNAPSHOTS_LOOK_BACK_DURATION);
+            snapshotCursor = properties.isLatestSnapshotsOnly()
+                    ? findLatestSnapshots(position, batchSize)
+                    : rawCollection(SNAPSHOTS).find(and(after(position), lookBackLimit()))
+                                              .projection(projection(""))
+                                              .sort(snapshotOrder())
+                                              .batchSize(batchSize);
+            snapshotIterator = snapshotCursor.iterator();
+        }
+
+        List<MongoDomainEvent> results = getResults(snapshotIterator, batchSize);
+        if (results.isEmpty() && isTailing()) {
+            log.info("Read all snapshots before {}, continuing with a change stream", snapshotsReadUntil);
+            snapshotIterator.close();
+            snapshotsStream = watch(SNAPSHOTS, "timestamp", null, snapshotsReadUntil, batchSize);
+            return getResults(snapshotsStream, batchSize);
+        }
+        return results;
+    }
 
-            snapshotCursor = snapshotCollection.find(and(gt("timestamp",
-                    lastProcessedTimestamp),and(lte("timestamp", Instant.now().minus(SNAPSHOTS_LOOK_BACK_DURATION).toString()))));
+    /**
+     * Selects the snapshot with the highest sequence number of each aggregate in the database, and then only keeps those
+     * after the position. Both fields are sorted descending, so the sort walks the index on aggregate identifier and
+     * sequence number backwards; sorting them in opposite directions would sort all snapshots in memory.
+     */
+    private MongoIterable<RawBsonDocument> findLatestSnapshots(SnapshotPosition position, int batchSize) {
+        List<Bson> pipeline = Arrays.asList(
+                Aggregates.sort(Sorts.descending("aggregateIdentifier", "sequenceNumber")),
+                new Document("$group", new Document("_id", new Document("type", "$type")
+                        .append("aggregateIdentifier", "$aggregateIdentifier"))
+                        .append("snapshot", new Document("$first", "$$ROOT"))),
+                new Document("$replaceRoot", new Document("newRoot", "$snapshot")),
+                Aggregates.match(and(after(position), lookBackLimit())),
+                Aggregates.sort(snapshotOrder()),
+                Aggregates.project(projection("")));
+        return rawCollection(SNAPSHOTS).aggregate(pipeline).allowDiskUse(true).batchSize(batchSize);
+    }
 
-            snapshotCursor = snapshotCursor.batchSize(batchSize);
-            snapshotIterator = snapshotCursor.iterator();
+    /**
+     * Filter on the snapshots after the position, in the configured order. With {@code PRIMARY_KEY}, this is a range
+     * of the unique index on aggregate identifier and sequence number.
+     */
+    private Bson after(SnapshotPosition position) {
+        if (properties.getSnapshotOrder() == SnapshotOrder.PRIMARY_KEY) {
+            String aggregateIdentifier = nonNull(position.getAggregateIdentifier());
+            return or(gt("aggregateIdentifier", aggregateIdentifier),
+                      and(eq("aggregateIdentifier", aggregateIdentifier),
+                          gt("sequenceNumber", position.getSequenceNumber())));
         }
+        return or(gt("timestamp", position.getTimestamp()),
+                  and(eq("timestamp", position.getTimestamp()),
+                      gt("eventIdentifier", nonNull(position.getEventIdentifier()))));
+    }
 
-        return getResults(snapshotIterator,batchSize);
+    private Bson lookBackLimit() {
+        return lt("timestamp", formatInstant(snapshotsReadUntil));
     }
 
-    private List<MongoDomainEvent> getResults(MongoCursor<Document> iterator, int batchSize) {
-        List<MongoDomainEvent> results = new ArrayList<>();
+    private Bson snapshotOrder() {
+        return properties.getSnapshotOrder() == SnapshotOrder.PRIMARY_KEY
+                ? Sorts.ascending("aggregateIdentifier", "sequenceNumber")
+                : Sorts.ascending("timestamp", "eventIdentifier");
+    }
 
-        for (MongoCursor<Document> itr = iterator; results.size() < batchSize && itr.hasNext(); ) {
-            Document document = itr.next();
+    private boolean isTailing() {
+        return changeStreams && properties.isContinuous();
+    }
 
-            //DocumentPerCommitStorageStrategy
-            ArrayList<Document> events = (ArrayList<Document>) document.get("events");
-            if (events != null) {
-                events.forEach(doc->results.add(toEvent(doc)));
-            } else {
-                //DocumentPerEventStorageStrategy
-                results.add(toEvent(document));
-            }
+    /**
+     * Opens a change stream on the inserts into the given collection. It either continues after the given resume
+     * token, or starts at the given moment, which is where the cursor on the older documents stopped. Documents with a
+     * timestamp before that moment were read by the cursor, and are skipped. Of the inserted documents, only the
+     * fields used by the {@link RawEventDecoder} are returned.
+     */
+    private MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> watch(String collection,
+                                                                                 String timestampField,
+                                                                                 String resumeToken,
+                                                                                 Instant from,
+                                                                                 int batchSize) {
+        List<Bson> pipeline = new ArrayList<>();
+        pipeline.add(Aggregates.match(eq("operationType", "insert")));
+        if (resumeToken == null) {
+            pipeline.add(Aggregates.match(gte("fullDocument." + timestampField, formatInstant(from))));
         }
-        return results;
+        List<String> fields = new ArrayList<>(Arrays.asList("operationType", "ns", "documentKey", "clusterTime"));
+        RawEventDecoder.FIELDS.forEach(field -> {
+            fields.add("fullDocument." + field);
+            fields.add("fullDocument.events." + field);
+        });
+        pipeline.add(Aggregates.project(Projections.include(fields)));
+        ChangeStreamIterable<RawBsonDocument> stream = rawCollection(collection).watch(pipeline);
+        if (resumeToken != null) {
+            stream = stream.resumeAfter(BsonDocument.parse(resumeToken));
+        } else {
+            stream = stream.startAtOperationTime(new BsonTimestamp((int) from.getEpochSecond(), 0));
+        }
+        return stream.batchSize(batchSize)
+                     .maxAwaitTime(properties.getTailPollMinMillis(), TimeUnit.MILLISECONDS)
+                     .cursor();
     }
 
-    private MongoDomainEvent toEvent(Document document) {
-        return new MongoDomainEvent(
-                document.getString("timestamp"),
-                document.getString("serializedPayload"),
-                document.getString("serializedMetaData"),
-                document.getString("eventIdentifier"),
-                document.getString("payloadType"),
-                document.getString("payloadRevision"),
-                document.getString("type"),
-                document.getString("aggregateIdentifier"),
-                document.getLong("sequenceNumber")
-        );
+    private List<MongoDomainEvent> getResults(MongoCursor<RawBsonDocument> iterator, int batchSize) {
+        List<MongoDomainEvent> results = new ArrayList<>();
+
+        for (MongoCursor<RawBsonDocument> itr = iterator; results.size() < batchSize && itr.hasNext(); ) {
+            RawEventDecoder.decode(itr.next(), null, results);
+        }
+        return results;
     }
 
+    /**
+     * Takes the inserts available on the change stream, without waiting for more than the await time of the stream
+     * when there are none.
+     */
+    private List<MongoDomainEvent> getResults(MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> stream,
+                                              int batchSize) {
+        List<MongoDomainEvent> results = new ArrayList<>();
+        ChangeStreamDocument<RawBsonDocument> change;
+        while (results.size() < batchSize && (change = stream.tryNext()) != null) {
+            RawEventDecoder.decode(change.getFullDocument(), change.getResumeToken().toJson(), results);
+        }
+        return results;
+    }
 
+    @PreDestroy
+    public void close() {
+        closeEvents();
+        if (snapshotsStream != null) {
+            snapshotsStream.close();
+        }
+    }
 }
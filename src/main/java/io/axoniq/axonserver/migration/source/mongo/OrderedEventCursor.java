@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.mongo;
+
+import com.mongodb.client.MongoCursor;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static io.axoniq.axonserver.migration.source.SnapshotPosition.nonNull;
+
+/**
+ * Reads events from a cursor on event documents sorted on timestamp and sequence number, which the index Axon Framework
+ * creates on those fields serves. Documents sharing both are returned by the database in any order. They are put in
+ * order of aggregate identifier here, so the events are read in the same order on every run, and a run can continue
+ * right after the last event migrated by an earlier one.
+ * <p>
+ * A batch always holds all documents sharing the timestamp and sequence number of its last document, so it can be
+ * somewhat larger than requested. Commit documents are ordered by the timestamp and sequence number of their first
+ * event. Commits unwound by the database carry those fields of their commit.
+ */
+final class OrderedEventCursor implements AutoCloseable {
+
+    private static final Comparator<DecodedDocument> ORDER = Comparator
+            .comparing((DecodedDocument document) -> document.timestamp)
+            .thenComparingLong(document -> document.sequenceNumber)
+            .thenComparing(document -> document.aggregateIdentifier);
+
+    private final MongoCursor<RawBsonDocument> cursor;
+    private ResumePosition resumePosition;
+    private DecodedDocument pending;
+
+    /**
+     * Creates a reader for the given cursor, leaving out the events migrated already at the given position.
+     *
+     * @param cursor         The cursor on the event documents, sorted on timestamp and sequence number
+     * @param resumePosition The position the cursor starts at, or {@code null} to read all events of the cursor
+     */
+    OrderedEventCursor(MongoCursor<RawBsonDocument> cursor, ResumePosition resumePosition) {
+        this.cursor = cursor;
+        this.resumePosition = resumePosition;
+    }
+
+    /**
+     * Takes the next events from the cursor.
+     *
+     * @param batchSize The amount of events to return, apart from documents sharing the timestamp and sequence number
+     *                  of the last one. Events migrated already do not count.
+     * @return The next events, or an empty list when the cursor has been read to the end
+     */
+    List<MongoDomainEvent> next(int batchSize) {
+        while (true) {
+            List<DecodedDocument> documents = nextDocuments(batchSize);
+            List<MongoDomainEvent> results = order(documents, resumePosition);
+            if (!documents.isEmpty()) {
+                // Only the documents at the start of the cursor can have been migrated already
+                resumePosition = null;
+            }
+            if (documents.isEmpty() || !results.isEmpty()) {
+                return results;
+            }
+        }
+    }
+
+    private List<DecodedDocument> nextDocuments(int batchSize) {
+        List<DecodedDocument> documents = new ArrayList<>();
+        int events = 0;
+        while (true) {
+            DecodedDocument document = pending;
+            pending = null;
+            if (document == null && cursor.hasNext()) {
+                document = new DecodedDocument(cursor.next());
+            }
+            if (document == null) {
+                break;
+            }
+            if (events >= batchSize && !document.isTiedWith(documents.get(documents.size() - 1))) {
+                pending = document;
+                break;
+            }
+            documents.add(document);
+            events += document.countNotMigrated(resumePosition);
+        }
+        return documents;
+    }
+
+    /**
+     * Decodes the given documents into their events in order. The documents are to include all documents sharing the
+     * timestamp and sequence number of any of them, like those of a range of timestamps.
+     *
+     * @param documents      The documents to decode
+     * @param resumePosition The position the documents start at, or {@code null} if all events are to be returned
+     * @return The events in order, without those migrated already
+     */
+    static List<MongoDomainEvent> decode(List<RawBsonDocument> documents, ResumePosition resumePosition) {
+        List<DecodedDocument> decoded = new ArrayList<>(documents.size());
+        documents.forEach(document -> decoded.add(new DecodedDocument(document)));
+        return order(decoded, resumePosition);
+    }
+
+    private static List<MongoDomainEvent> order(List<DecodedDocument> documents, ResumePosition resumePosition) {
+        documents.sort(ORDER);
+        List<MongoDomainEvent> results = new ArrayList<>();
+        for (DecodedDocument document : documents) {
+            for (MongoDomainEvent event : document.events) {
+                if (resumePosition == null || !resumePosition.isMigrated(document, event)) {
+                    results.add(event);
+                }
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void close() {
+        cursor.close();
+    }
+
+    /**
+     * Where a run continues: the timestamp and sequence number of the document holding the last event migrated, and
+     * that event itself. Of the documents sharing that timestamp and sequence number, those ordered before the
+     * document of the last event were migrated, as were the events of that document up to the last one.
+     */
+    static final class ResumePosition {
+
+        private final String timestamp;
+        private final long sequenceNumber;
+        private final EventPosition lastEvent;
+
+        /**
+         * @param timestamp      The timestamp of the document holding the last event migrated
+         * @param sequenceNumber The sequence number of the first event of that document
+         * @param lastEvent      The position of the last event migrated, including its aggregate identifier
+         */
+        ResumePosition(String timestamp, long sequenceNumber, EventPosition lastEvent) {
+            this.timestamp = timestamp;
+            this.sequenceNumber = sequenceNumber;
+            this.lastEvent = lastEvent;
+        }
+
+        private boolean isMigrated(DecodedDocument document, MongoDomainEvent event) {
+            if (!timestamp.equals(document.timestamp) || sequenceNumber != document.sequenceNumber) {
+                return false;
+            }
+            int order = document.aggregateIdentifier.compareTo(nonNull(lastEvent.getAggregateIdentifier()));
+            return order < 0 || (order == 0 && event.getSequenceNumber() <= lastEvent.getSequenceNumber());
+        }
+    }
+
+    /**
+     * The events of a document, together with the fields it is ordered on.
+     */
+    private static final class DecodedDocument {
+
+        private final String timestamp;
+        private final long sequenceNumber;
+        private final String aggregateIdentifier;
+        private final List<MongoDomainEvent> events = new ArrayList<>(1);
+
+        private DecodedDocument(RawBsonDocument document) {
+            BsonValue commitTimestamp = document.get("firstTimestamp");
+            BsonValue timestampValue = commitTimestamp != null ? commitTimestamp : document.get("timestamp");
+            BsonValue commitSequenceNumber = document.get("firstSequenceNumber");
+            BsonValue sequenceNumberValue = commitSequenceNumber != null
+                    ? commitSequenceNumber
+                    : document.get("sequenceNumber");
+            BsonValue aggregateIdentifierValue = document.get("aggregateIdentifier");
+            this.timestamp = timestampValue != null && timestampValue.isString()
+                    ? timestampValue.asString().getValue()
+                    : "";
+            this.sequenceNumber = sequenceNumberValue != null && sequenceNumberValue.isNumber()
+                    ? sequenceNumberValue.asNumber().longValue()
+                    : 0;
+            this.aggregateIdentifier = aggregateIdentifierValue != null && aggregateIdentifierValue.isString()
+                    ? aggregateIdentifierValue.asString().getValue()
+                    : "";
+            RawEventDecoder.decode(document, null, events);
+        }
+
+        private int countNotMigrated(ResumePosition resumePosition) {
+            if (resumePosition == null) {
+                return events.size();
+            }
+            return (int) events.stream().filter(event -> !resumePosition.isMigrated(this, event)).count();
+        }
+
+        private boolean isTiedWith(DecodedDocument other) {
+            return timestamp.equals(other.timestamp) && sequenceNumber == other.sequenceNumber;
+        }
+    }
+}
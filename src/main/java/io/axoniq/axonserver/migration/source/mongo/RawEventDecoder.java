@@ -0,0 +1,261 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.mongo;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.bson.BsonSerializationException;
+import org.bson.RawBsonDocument;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes event and snapshot documents straight from their BSON bytes into {@link MongoDomainEvent MongoDomainEvents},
+ * without building a {@link org.bson.Document} first. Only the fields of {@link #FIELDS} are read, all others are
+ * skipped. The payload is kept as a slice of the document bytes, so it is never decoded into a {@link String}.
+ * <p>
+ * Documents holding the events of a commit in an {@code events} array, as written by the
+ * {@code DocumentPerCommitStorageStrategy}, are decoded into an event per element.
+ * <p>
+ * A field of a type the event cannot hold, such as a number as payload, fails the decoding with a
+ * {@link BsonSerializationException}, as reading it into a {@link org.bson.Document} would fail as well.
+ */
+final class RawEventDecoder {
+
+    /**
+     * The fields of an event document used by the migration.
+     */
+    static final List<String> FIELDS = Arrays.asList(
+            "timestamp", "serializedPayload", "serializedMetaData", "eventIdentifier", "payloadType",
+            "payloadRevision", "type", "aggregateIdentifier", "sequenceNumber"
+    );
+
+    private static final byte[][] FIELD_NAMES = FIELDS.stream()
+                                                      .map(name -> name.getBytes(StandardCharsets.UTF_8))
+                                                      .toArray(byte[][]::new);
+    private static final byte[] EVENTS = "events".getBytes(StandardCharsets.UTF_8);
+
+    private static final int TIMESTAMP = 0;
+    private static final int PAYLOAD = 1;
+    private static final int META_DATA = 2;
+    private static final int EVENT_IDENTIFIER = 3;
+    private static final int PAYLOAD_TYPE = 4;
+    private static final int PAYLOAD_REVISION = 5;
+    private static final int TYPE = 6;
+    private static final int AGGREGATE_IDENTIFIER = 7;
+    private static final int SEQUENCE_NUMBER = 8;
+    private static final int COMMIT_EVENTS = -2;
+    private static final int UNKNOWN = -1;
+
+    private RawEventDecoder() {
+    }
+
+    /**
+     * Decodes the events in the given document, adding them to the results.
+     *
+     * @param document    The document to decode
+     * @param resumeToken The token to resume the change stream after this document, or {@code null}
+     * @param results     The list to add the events to
+     */
+    static void decode(RawBsonDocument document, String resumeToken, List<MongoDomainEvent> results) {
+        ByteBuffer buffer = document.getByteBuffer().asNIO().order(ByteOrder.LITTLE_ENDIAN);
+        decode(buffer, buffer.position(), resumeToken, results);
+    }
+
+    private static void decode(ByteBuffer buffer, int start, String resumeToken, List<MongoDomainEvent> results) {
+        String[] strings = new String[FIELDS.size()];
+        ByteString payload = ByteString.EMPTY;
+        byte[] metaData = null;
+        long sequenceNumber = 0;
+        boolean commit = false;
+
+        int end = start + buffer.getInt(start) - 1;
+        int position = start + 4;
+        while (position < end) {
+            byte type = buffer.get(position++);
+            int nameEnd = position;
+            while (buffer.get(nameEnd) != 0) {
+                nameEnd++;
+            }
+            int field = field(buffer, position, nameEnd);
+            position = nameEnd + 1;
+
+            if (field == COMMIT_EVENTS && type == 0x04) {
+                commit = true;
+                decodeArray(buffer, position, resumeToken, results);
+            } else if (field == SEQUENCE_NUMBER) {
+                sequenceNumber = readNumber(buffer, position, type);
+            } else if (field == PAYLOAD) {
+                payload = slice(buffer, position, type, FIELDS.get(PAYLOAD));
+            } else if (field == META_DATA) {
+                metaData = type == 0x0A ? null : slice(buffer, position, type, FIELDS.get(META_DATA)).toByteArray();
+            } else if (field >= 0 && type == 0x02) {
+                strings[field] = new String(buffer.array(),
+                                            buffer.arrayOffset() + position + 4,
+                                            buffer.getInt(position) - 1,
+                                            StandardCharsets.UTF_8);
+            } else if (field >= 0 && type != 0x0A) {
+                throw unsupported(type, FIELDS.get(field));
+            }
+            position += valueSize(buffer, position, type);
+        }
+
+        if (!commit) {
+            MongoDomainEvent event = new MongoDomainEvent(strings[TIMESTAMP],
+                                                          payload,
+                                                          metaData,
+                                                          strings[EVENT_IDENTIFIER],
+                                                          strings[PAYLOAD_TYPE],
+                                                          strings[PAYLOAD_REVISION],
+                                                          strings[TYPE],
+                                                          strings[AGGREGATE_IDENTIFIER],
+                                                          sequenceNumber);
+            event.setResumeToken(resumeToken);
+            results.add(event);
+        }
+    }
+
+    private static void decodeArray(ByteBuffer buffer, int start, String resumeToken, List<MongoDomainEvent> results) {
+        int end = start + buffer.getInt(start) - 1;
+        int position = start + 4;
+        while (position < end) {
+            byte type = buffer.get(position++);
+            while (buffer.get(position) != 0) {
+                position++;
+            }
+            position++;
+            if (type == 0x03) {
+                decode(buffer, position, resumeToken, results);
+            }
+            position += valueSize(buffer, position, type);
+        }
+    }
+
+    private static int field(ByteBuffer buffer, int nameStart, int nameEnd) {
+        int length = nameEnd - nameStart;
+        if (matches(buffer, nameStart, length, EVENTS)) {
+            return COMMIT_EVENTS;
+        }
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            if (matches(buffer, nameStart, length, FIELD_NAMES[i])) {
+                return i;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, int length, byte[] name) {
+        if (length != name.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Wraps the bytes of a string or binary value, without copying them.
+     */
+    private static ByteString slice(ByteBuffer buffer, int position, byte type, String field) {
+        switch (type) {
+            case 0x02:
+                return UnsafeByteOperations.unsafeWrap(buffer.array(),
+                                                       buffer.arrayOffset() + position + 4,
+                                                       buffer.getInt(position) - 1);
+            case 0x05:
+                // The old binary subtype repeats the length in front of the data
+                int header = buffer.get(position + 4) == 0x02 ? 9 : 5;
+                return UnsafeByteOperations.unsafeWrap(buffer.array(),
+                                                       buffer.arrayOffset() + position + header,
+                                                       buffer.getInt(position) + 5 - header);
+            default:
+                throw unsupported(type, field);
+        }
+    }
+
+    private static long readNumber(ByteBuffer buffer, int position, byte type) {
+        switch (type) {
+            case 0x01:
+                return (long) buffer.getDouble(position);
+            case 0x10:
+                return buffer.getInt(position);
+            case 0x12:
+                return buffer.getLong(position);
+            default:
+                throw unsupported(type, FIELDS.get(SEQUENCE_NUMBER));
+        }
+    }
+
+    private static BsonSerializationException unsupported(byte type, String field) {
+        return new BsonSerializationException(String.format("Unsupported BSON type 0x%02X for field %s", type, field));
+    }
+
+    private static int valueSize(ByteBuffer buffer, int position, byte type) {
+        switch (type) {
+            case 0x06: // undefined
+            case 0x0A: // null
+            case 0x7F: // max key
+            case (byte) 0xFF: // min key
+                return 0;
+            case 0x08: // boolean
+                return 1;
+            case 0x10: // int32
+                return 4;
+            case 0x01: // double
+            case 0x09: // date time
+            case 0x11: // timestamp
+            case 0x12: // int64
+                return 8;
+            case 0x07: // object id
+                return 12;
+            case 0x13: // decimal128
+                return 16;
+            case 0x02: // string
+            case 0x0D: // javascript
+            case 0x0E: // symbol
+                return 4 + buffer.getInt(position);
+            case 0x03: // document
+            case 0x04: // array
+            case 0x0F: // javascript with scope
+                return buffer.getInt(position);
+            case 0x05: // binary
+                return 5 + buffer.getInt(position);
+            case 0x0B: // regular expression
+                int end = position;
+                while (buffer.get(end) != 0) {
+                    end++;
+                }
+                end++;
+                while (buffer.get(end) != 0) {
+                    end++;
+                }
+                return end + 1 - position;
+            case 0x0C: // db pointer
+                return 4 + buffer.getInt(position) + 12;
+            default:
+                throw new BsonSerializationException("Unsupported BSON type " + type);
+        }
+    }
+}
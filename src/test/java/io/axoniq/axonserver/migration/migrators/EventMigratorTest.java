@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.grpc.SerializedObject;
+import io.axoniq.axonserver.grpc.event.Event;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.destination.AggregateSequenceIndex;
+import io.axoniq.axonserver.migration.destination.EventStoreStrategy;
+import io.axoniq.axonserver.migration.migrators.checkpoint.CheckpointStore;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
+import io.axoniq.axonserver.migration.serialisation.EventSerializer;
+import io.axoniq.axonserver.migration.source.DomainEvent;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import io.axoniq.axonserver.migration.source.EventProducer;
+import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import io.grpc.Status;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EventMigratorTest {
+
+    private static final int EVENT_COUNT = 100;
+
+    private MigrationBaseProperties properties;
+    private FailingEventStore eventStore;
+    private EventConverter eventConverter;
+    private BatchSizeController batchSizeController;
+    private EventMigrator testSubject;
+
+    @BeforeEach
+    void setUp() {
+        properties = new MigrationBaseProperties();
+        properties.setBatchSize(10);
+        properties.setMaxInFlightTransactions(3);
+        List<DomainEvent> events = IntStream.range(0, EVENT_COUNT)
+                                            .mapToObj(EventMigratorTest::event)
+                                            .collect(Collectors.toList());
+        EventSerializer eventSerializer = mock(EventSerializer.class);
+        when(eventSerializer.toPayload(any())).thenReturn(SerializedObject.getDefaultInstance());
+        eventStore = new FailingEventStore(4, () -> new IllegalStateException("Storing failed"));
+        eventConverter = new EventConverter(properties, eventSerializer, eventStore);
+        batchSizeController = new BatchSizeController(properties);
+        testSubject = new EventMigrator(properties,
+                                        new InMemoryEventProducer(events),
+                                        eventConverter,
+                                        new InMemoryCheckpointStore(),
+                                        eventStore,
+                                        mock(EventMigratorStatisticsReporter.class),
+                                        batchSizeController,
+                                        new GapTracker(properties),
+                                        mock(AggregateSequenceIndex.class),
+                                        new MigrationBudget(properties));
+    }
+
+    @AfterEach
+    void tearDown() {
+        eventConverter.shutdown();
+        eventStore.committer.shutdownNow();
+    }
+
+    @Test
+    void migratesEveryEventOnceAfterFailedStore() throws Exception {
+        assertThrows(ExecutionException.class, testSubject::migrate);
+
+        // As the runner does, continue from the checkpoint
+        testSubject.migrate();
+
+        List<String> expected = IntStream.range(0, EVENT_COUNT)
+                                         .mapToObj(index -> "event-" + index)
+                                         .collect(Collectors.toList());
+        assertEquals(expected, new ArrayList<>(eventStore.stored));
+    }
+
+    @Test
+    void shrinksBatchSizeOnceWhenBatchExceedsMessageSize() {
+        properties.setAdaptiveBatchSize(true);
+        properties.setMinBatchSize(1);
+        properties.setMaxBatchSize(10);
+        eventStore.failure = () -> Status.RESOURCE_EXHAUSTED.withDescription("Message too large").asRuntimeException();
+
+        assertThrows(ExecutionException.class, testSubject::migrate);
+
+        // The batches in flight after the rejected one failed along with it, but are not taken into account
+        assertEquals(5, batchSizeController.getBatchSize());
+    }
+
+    /**
+     * Returns the events after the position it is given, as every source is to do.
+     */
+    private static class InMemoryEventProducer implements EventProducer {
+
+        private final List<DomainEvent> events;
+
+        private InMemoryEventProducer(List<DomainEvent> events) {
+            this.events = events;
+        }
+
+        @Override
+        public List<? extends DomainEvent> findEvents(EventPosition position, int batchSize) {
+            return events.stream()
+                         .filter(event -> event.getGlobalIndex() > position.getGlobalIndex())
+                         .limit(batchSize)
+                         .collect(Collectors.toList());
+        }
+
+        @Override
+        public List<? extends SnapshotEvent> findSnapshots(SnapshotPosition position, int batchSize) {
+            return Collections.emptyList();
+        }
+    }
+
+    private static class InMemoryCheckpointStore implements CheckpointStore {
+
+        private final MigrationStatus status = new MigrationStatus();
+
+        @Override
+        public MigrationStatus load() {
+            return status.copy();
+        }
+
+        @Override
+        public void saveEventPosition(EventPosition position) {
+            status.setEventPosition(position);
+        }
+
+        @Override
+        public void saveSnapshotPosition(SnapshotPosition position) {
+            status.setSnapshotPosition(position);
+        }
+    }
+
+    /**
+     * Commits the batches in order on a single thread. The given transaction fails, and so do those started after it
+     * until the migration rolls back.
+     */
+    private static class FailingEventStore implements EventStoreStrategy {
+
+        private final ExecutorService committer = Executors.newSingleThreadExecutor();
+        private final List<String> stored = new CopyOnWriteArrayList<>();
+        private final AtomicInteger transactions = new AtomicInteger();
+        private final AtomicBoolean failing = new AtomicBoolean();
+        private final int failingTransaction;
+        private Supplier<RuntimeException> failure;
+
+        private FailingEventStore(int failingTransaction, Supplier<RuntimeException> failure) {
+            this.failingTransaction = failingTransaction;
+            this.failure = failure;
+        }
+
+        @Override
+        public CompletableFuture<Void> storeEventsAsync(List<Event> events) {
+            if (transactions.incrementAndGet() == failingTransaction) {
+                failing.set(true);
+            }
+            boolean fail = failing.get();
+            return CompletableFuture.runAsync(() -> {
+                if (fail) {
+                    throw failure.get();
+                }
+                events.forEach(event -> stored.add(event.getMessageIdentifier()));
+            }, committer);
+        }
+
+        @Override
+        public void storeEvents(List<Event> events) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void appendSnapshot(Event snapshot) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getLastEventId() {
+            return stored.isEmpty() ? null : stored.get(stored.size() - 1);
+        }
+
+        @Override
+        public void rollback() {
+            failing.set(false);
+        }
+    }
+
+    private static DomainEvent event(int globalIndex) {
+        return new DomainEvent() {
+            @Override
+            public long getGlobalIndex() {
+                return globalIndex;
+            }
+
+            @Override
+            public String getType() {
+                return "Aggregate";
+            }
+
+            @Override
+            public String getAggregateIdentifier() {
+                return "aggregate";
+            }
+
+            @Override
+            public long getSequenceNumber() {
+                return globalIndex;
+            }
+
+            @Override
+            public String getEventIdentifier() {
+                return "event-" + globalIndex;
+            }
+
+            @Override
+            public long getTimeStampAsLong() {
+                return 0;
+            }
+
+            @Override
+            public String getPayloadType() {
+                return "Payload";
+            }
+
+            @Override
+            public String getPayloadRevision() {
+                return null;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return new byte[0];
+            }
+
+            @Override
+            public byte[] getMetaData() {
+                return null;
+            }
+        };
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.source.DomainEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GapTrackerTest {
+
+    private static final long OLD = 0;
+
+    private GapTracker testSubject;
+    private long recent;
+
+    @BeforeEach
+    void setUp() {
+        MigrationBaseProperties properties = new MigrationBaseProperties();
+        properties.setRecentMillis(60000);
+        testSubject = new GapTracker(properties);
+        recent = System.currentTimeMillis();
+    }
+
+    @Test
+    void releasesContiguousEventsInOrder() {
+        List<DomainEvent> released = testSubject.track(-1, Arrays.asList(event(1, recent),
+                                                                          event(0, recent),
+                                                                          event(2, recent)));
+
+        assertEquals(Arrays.asList(0L, 1L, 2L), indexes(released));
+        assertFalse(testSubject.hasOpenGaps());
+    }
+
+    @Test
+    void holdsEventsAfterRecentGapUntilFilled() {
+        List<DomainEvent> released = testSubject.track(-1, Arrays.asList(event(0, recent),
+                                                                          event(2, recent),
+                                                                          event(3, recent)));
+
+        assertEquals(Arrays.asList(0L), indexes(released));
+        assertTrue(testSubject.hasOpenGaps());
+        assertArrayEquals(new long[]{1}, testSubject.getMissingIndexes(10));
+
+        released = testSubject.track(0, Arrays.asList(event(1, recent)));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), indexes(released));
+        assertFalse(testSubject.hasOpenGaps());
+    }
+
+    @Test
+    void releasesEventsAfterGapFollowedByOldEvent() {
+        List<DomainEvent> released = testSubject.track(-1, Arrays.asList(event(0, OLD),
+                                                                          event(2, OLD),
+                                                                          event(3, recent)));
+
+        assertEquals(Arrays.asList(0L, 2L, 3L), indexes(released));
+        assertFalse(testSubject.hasOpenGaps());
+    }
+
+    @Test
+    void movesWindowToFirstEventBeyondIt() {
+        long first = 5_000_000;
+        List<DomainEvent> released = testSubject.track(-1, Arrays.asList(event(first + 1, recent),
+                                                                          event(first, recent)));
+
+        assertEquals(Arrays.asList(first, first + 1), indexes(released));
+        assertFalse(testSubject.hasOpenGaps());
+    }
+
+    @Test
+    void readsEventsBeyondWindowAgainWhileHoldingEvents() {
+        long far = 5_000_000;
+        List<DomainEvent> released = testSubject.track(-1, Arrays.asList(event(0, recent),
+                                                                          event(2, recent),
+                                                                          event(far, recent)));
+
+        assertEquals(Arrays.asList(0L), indexes(released));
+        assertArrayEquals(new long[]{1}, testSubject.getMissingIndexes(10));
+
+        released = testSubject.track(0, Arrays.asList(event(1, recent)));
+        assertEquals(Arrays.asList(1L, 2L), indexes(released));
+
+        released = testSubject.track(2, Arrays.asList(event(far, recent)));
+        assertEquals(Arrays.asList(far), indexes(released));
+    }
+
+    private static List<Long> indexes(List<DomainEvent> events) {
+        return events.stream().map(DomainEvent::getGlobalIndex).collect(Collectors.toList());
+    }
+
+    private static DomainEvent event(long globalIndex, long timestamp) {
+        return new DomainEvent() {
+            @Override
+            public long getGlobalIndex() {
+                return globalIndex;
+            }
+
+            @Override
+            public String getType() {
+                return "Aggregate";
+            }
+
+            @Override
+            public String getAggregateIdentifier() {
+                return "aggregate-" + globalIndex;
+            }
+
+            @Override
+            public long getSequenceNumber() {
+                return 0;
+            }
+
+            @Override
+            public String getEventIdentifier() {
+                return "event-" + globalIndex;
+            }
+
+            @Override
+            public long getTimeStampAsLong() {
+                return timestamp;
+            }
+
+            @Override
+            public String getPayloadType() {
+                return "Payload";
+            }
+
+            @Override
+            public String getPayloadRevision() {
+                return null;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return new byte[0];
+            }
+
+            @Override
+            public byte[] getMetaData() {
+                return null;
+            }
+        };
+    }
+}
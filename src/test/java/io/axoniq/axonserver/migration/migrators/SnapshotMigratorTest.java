@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.migrators;
+
+import io.axoniq.axonserver.grpc.SerializedObject;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.destination.EventStoreStrategy;
+import io.axoniq.axonserver.migration.migrators.checkpoint.CheckpointStore;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
+import io.axoniq.axonserver.migration.serialisation.EventSerializer;
+import io.axoniq.axonserver.migration.source.EventProducer;
+import io.axoniq.axonserver.migration.source.SnapshotEvent;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SnapshotMigratorTest {
+
+    private EventProducer eventProducer;
+    private CheckpointStore checkpointStore;
+    private EventStoreStrategy eventStoreStrategy;
+    private SnapshotMigrator testSubject;
+
+    @BeforeEach
+    void setUp() {
+        MigrationBaseProperties properties = new MigrationBaseProperties();
+        properties.setMaxInFlightSnapshots(4);
+        eventProducer = mock(EventProducer.class);
+        checkpointStore = mock(CheckpointStore.class);
+        when(checkpointStore.load()).thenReturn(new MigrationStatus());
+        EventSerializer eventSerializer = mock(EventSerializer.class);
+        when(eventSerializer.toPayload(any())).thenReturn(SerializedObject.getDefaultInstance());
+        eventStoreStrategy = mock(EventStoreStrategy.class);
+        testSubject = new SnapshotMigrator(properties,
+                                           eventProducer,
+                                           checkpointStore,
+                                           eventSerializer,
+                                           eventStoreStrategy,
+                                           mock(SnapshotMigratorStatisticsReporter.class),
+                                           new MigrationBudget(properties));
+    }
+
+    @Test
+    void doesNotCheckpointPastFailedAppend() {
+        CompletableFuture<Void> failing = new CompletableFuture<>();
+        doReturn(Arrays.asList(snapshot(1), snapshot(2), snapshot(3)))
+                .doAnswer(invocation -> {
+                    failing.completeExceptionally(new IllegalStateException("Append failed"));
+                    return Collections.emptyList();
+                })
+                .when(eventProducer).findSnapshots(any(), anyInt());
+        when(eventStoreStrategy.appendSnapshotAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(failing)
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertThrows(ExecutionException.class, testSubject::migrate);
+
+        ArgumentCaptor<SnapshotPosition> saved = ArgumentCaptor.forClass(SnapshotPosition.class);
+        verify(checkpointStore, atLeastOnce()).saveSnapshotPosition(saved.capture());
+        saved.getAllValues().forEach(position -> assertEquals("snapshot-1", position.getEventIdentifier()));
+    }
+
+    private static SnapshotEvent snapshot(int number) {
+        return new SnapshotEvent() {
+            @Override
+            public String getType() {
+                return "Aggregate";
+            }
+
+            @Override
+            public String getAggregateIdentifier() {
+                return "aggregate-" + number;
+            }
+
+            @Override
+            public long getSequenceNumber() {
+                return 0;
+            }
+
+            @Override
+            public String getTimeStamp() {
+                return "2023-01-01T00:00:0" + number + "Z";
+            }
+
+            @Override
+            public String getEventIdentifier() {
+                return "snapshot-" + number;
+            }
+
+            @Override
+            public long getTimeStampAsLong() {
+                return number * 1000L;
+            }
+
+            @Override
+            public String getPayloadType() {
+                return "Payload";
+            }
+
+            @Override
+            public String getPayloadRevision() {
+                return null;
+            }
+
+            @Override
+            public byte[] getPayload() {
+                return new byte[0];
+            }
+
+            @Override
+            public byte[] getMetaData() {
+                return null;
+            }
+        };
+    }
+}
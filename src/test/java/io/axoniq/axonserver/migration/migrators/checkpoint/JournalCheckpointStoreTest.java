@@ -0,0 +1,269 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.migrators.checkpoint;
+
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatus;
+import io.axoniq.axonserver.migration.migrators.db.MigrationStatusRepository;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import io.axoniq.axonserver.migration.source.SnapshotPosition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JournalCheckpointStoreTest {
+
+    private static final int JOURNAL_SIZE = 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    private Path journal;
+    private MigrationBaseProperties properties;
+    private MigrationStatusRepository repository;
+    private JournalCheckpointStore testSubject;
+
+    @BeforeEach
+    void setUp() {
+        journal = directory.resolve("checkpoint.journal");
+        properties = new MigrationBaseProperties();
+        properties.setCheckpointFile(journal.toString());
+        properties.setCheckpointSyncMillis(0);
+        repository = mock(MigrationStatusRepository.class);
+        when(repository.findById(anyLong())).thenReturn(Optional.empty());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (testSubject != null) {
+            testSubject.close();
+        }
+    }
+
+    @Test
+    void recoversLastSavedPositions() throws IOException {
+        open();
+        testSubject.saveEventPosition(new EventPosition(10, "aggregate-1", 3, null));
+        testSubject.saveEventPosition(new EventPosition(11, "aggregate-2", 0, "token-11"));
+        testSubject.saveSnapshotPosition(new SnapshotPosition("2023-03-15T10:20:30Z",
+                                                              "snapshot-1",
+                                                              "aggregate-1",
+                                                              3,
+                                                              "Aggregate",
+                                                              "snapshot-token"));
+
+        MigrationStatus status = reopen().load();
+
+        assertEquals(11, status.getLastEventGlobalIndex());
+        assertEquals("aggregate-2", status.getLastEventAggregateIdentifier());
+        assertEquals(0, status.getLastEventSequenceNumber());
+        assertEquals("token-11", status.getEventResumeToken());
+        assertEquals("2023-03-15T10:20:30Z", status.getLastSnapshotTimestamp());
+        assertEquals("snapshot-1", status.getLastSnapshotEventId());
+        assertEquals("aggregate-1", status.getLastSnapshotAggregateIdentifier());
+        assertEquals(3, status.getLastSnapshotSequenceNumber());
+        assertEquals("Aggregate", status.getLastSnapshotType());
+        assertEquals("snapshot-token", status.getLastSnapshotResumeToken());
+    }
+
+    @Test
+    void ignoresRecordWithInvalidChecksum() throws IOException {
+        byte[] torn = record(8, "aggregate-8", 1);
+        torn[torn.length - 1] ^= 1;
+        writeJournal(frame(record(7, "aggregate-7", 0)), frame(torn, checksum(record(8, "aggregate-8", 1))));
+
+        MigrationStatus status = open().load();
+
+        assertEquals(7, status.getLastEventGlobalIndex());
+        assertEquals("aggregate-7", status.getLastEventAggregateIdentifier());
+    }
+
+    @Test
+    void ignoresRecordCutOffByEndOfFile() throws IOException {
+        byte[] complete = frame(record(7, "aggregate-7", 0));
+        byte[] next = frame(record(8, "aggregate-8", 1));
+        byte[] cutOff = new byte[next.length - 3];
+        System.arraycopy(next, 0, cutOff, 0, cutOff.length);
+        Files.write(journal, concat(complete, cutOff));
+
+        MigrationStatus status = open().load();
+
+        assertEquals(7, status.getLastEventGlobalIndex());
+    }
+
+    @Test
+    void continuesAfterRecoveredRecord() throws IOException {
+        byte[] torn = frame(record(8, "aggregate-8", 1));
+        torn[torn.length - 1] ^= 1;
+        writeJournal(frame(record(7, "aggregate-7", 0)), torn);
+        open();
+
+        testSubject.saveEventPosition(new EventPosition(9, "aggregate-9", 2, null));
+
+        assertEquals(9, reopen().load().getLastEventGlobalIndex());
+    }
+
+    @Test
+    void rewritesJournalWhenFull() throws IOException {
+        properties.setCheckpointSyncMillis(60000);
+        open();
+        StringBuilder identifier = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            identifier.append('a');
+        }
+        int saves = 3 * JOURNAL_SIZE / identifier.length();
+        for (int i = 0; i < saves; i++) {
+            testSubject.saveEventPosition(new EventPosition(i, identifier.toString() + i, i, null));
+        }
+
+        assertEquals(JOURNAL_SIZE, Files.size(journal));
+        ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(journal));
+        long firstGlobalIndex = content.getLong(8 + 1);
+        assertTrue(firstGlobalIndex > 0, "Journal should start with a record written after it was full");
+
+        MigrationStatus status = reopen().load();
+        assertEquals(saves - 1, status.getLastEventGlobalIndex());
+        assertEquals(identifier.toString() + (saves - 1), status.getLastEventAggregateIdentifier());
+    }
+
+    @Test
+    void takesOverStatusFromMigrationDatabase() throws IOException {
+        MigrationStatus existing = new MigrationStatus();
+        existing.setLastEventGlobalIndex(1234);
+        existing.setLastSnapshotTimestamp("2023-03-15T10:20:30Z");
+        existing.setLastSnapshotEventId("snapshot-1");
+        when(repository.findById(1L)).thenReturn(Optional.of(existing));
+
+        MigrationStatus status = open().load();
+
+        assertEquals(1234, status.getLastEventGlobalIndex());
+        assertEquals("2023-03-15T10:20:30Z", status.getLastSnapshotTimestamp());
+        assertEquals("snapshot-1", status.getLastSnapshotEventId());
+        assertTrue(Files.exists(journal));
+
+        when(repository.findById(1L)).thenReturn(Optional.empty());
+        assertEquals(1234, reopen().load().getLastEventGlobalIndex());
+    }
+
+    @Test
+    void doesNotUseMigrationDatabaseWhenJournalExists() throws IOException {
+        writeJournal(frame(record(7, "aggregate-7", 0)));
+
+        open();
+
+        verify(repository, never()).findById(anyLong());
+        MigrationStatus status = testSubject.load();
+        assertEquals(7, status.getLastEventGlobalIndex());
+        assertEquals("aggregate-7", status.getLastEventAggregateIdentifier());
+        assertEquals("event-token", status.getEventResumeToken());
+        assertEquals("aggregate-1", status.getLastSnapshotAggregateIdentifier());
+        assertEquals(5, status.getLastSnapshotSequenceNumber());
+        assertEquals("snapshot-token", status.getLastSnapshotResumeToken());
+    }
+
+    private JournalCheckpointStore open() throws IOException {
+        testSubject = new JournalCheckpointStore(properties, repository);
+        testSubject.open();
+        return testSubject;
+    }
+
+    private JournalCheckpointStore reopen() throws IOException {
+        testSubject.close();
+        return open();
+    }
+
+    private void writeJournal(byte[]... frames) throws IOException {
+        byte[] content = new byte[JOURNAL_SIZE];
+        byte[] records = concat(frames);
+        System.arraycopy(records, 0, content, 0, records.length);
+        Files.write(journal, content);
+    }
+
+    /**
+     * Returns a record of the journal format, with fixed resume tokens and snapshot values.
+     */
+    private static byte[] record(long globalIndex, String aggregateIdentifier, long sequenceNumber)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(1);
+            output.writeLong(globalIndex);
+            writeNullable(output, aggregateIdentifier);
+            output.writeLong(sequenceNumber);
+            writeNullable(output, "event-token");
+            writeNullable(output, "2023-03-15T10:20:30Z");
+            writeNullable(output, "snapshot-1");
+            writeNullable(output, "aggregate-1");
+            output.writeLong(5);
+            writeNullable(output, "Aggregate");
+            writeNullable(output, "snapshot-token");
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeNullable(DataOutputStream output, String value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeUTF(value);
+        }
+    }
+
+    private static byte[] frame(byte[] record) {
+        return frame(record, checksum(record));
+    }
+
+    private static byte[] frame(byte[] record, int checksum) {
+        return ByteBuffer.allocate(8 + record.length)
+                         .putInt(record.length)
+                         .putInt(checksum)
+                         .put(record)
+                         .array();
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return (int) crc.getValue();
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+}
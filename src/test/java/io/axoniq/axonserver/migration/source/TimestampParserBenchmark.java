@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.source;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares parsing event timestamps with the {@link TimestampParser} to parsing them with
+ * {@link DateTimeFormatter#ISO_OFFSET_DATE_TIME}, as the sources did before. Run it through its
+ * {@link #main(String[]) main method} from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimestampParserBenchmark {
+
+    private static final int TIMESTAMPS = 1024;
+
+    /**
+     * The layout of the timestamps: as written by Axon's JPA and Mongo event stores, or with an offset.
+     */
+    @Param({"utc", "offset"})
+    private String layout;
+
+    private String[] timestamps;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        long now = Instant.now().toEpochMilli();
+        timestamps = new String[TIMESTAMPS];
+        for (int i = 0; i < TIMESTAMPS; i++) {
+            Instant instant = Instant.ofEpochMilli(now - (long) random.nextInt(Integer.MAX_VALUE) * 1000);
+            timestamps[i] = "utc".equals(layout)
+                    ? DateTimeFormatter.ISO_INSTANT.format(instant)
+                    : DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(instant.atOffset(ZoneOffset.ofHours(2)));
+        }
+    }
+
+    @Benchmark
+    public long timestampParser() {
+        return TimestampParser.toEpochMillis(nextTimestamp());
+    }
+
+    @Benchmark
+    public long isoOffsetDateTime() {
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(nextTimestamp(), Instant::from).toEpochMilli();
+    }
+
+    private String nextTimestamp() {
+        next = (next + 1) % TIMESTAMPS;
+        return timestamps[next];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TimestampParserBenchmark.class.getSimpleName()).build()).run();
+    }
+}
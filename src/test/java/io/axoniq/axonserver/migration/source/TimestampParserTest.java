@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TimestampParserTest {
+
+    @Test
+    void nullIsEpoch() {
+        assertEquals(0, TimestampParser.toEpochMillis(null));
+    }
+
+    @Test
+    void parsesAllFractionLengths() {
+        String digits = "123456789";
+        for (int length = 0; length <= 9; length++) {
+            String fraction = length == 0 ? "" : "." + digits.substring(0, length);
+            assertSameAsJdk("2023-03-15T10:20:30" + fraction + "Z");
+            assertSameAsJdk("1965-03-15T10:20:30" + fraction + "+02:00");
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2023-03-15T10:20:30.123+00:00",
+            "2023-03-15T10:20:30.123+01:00",
+            "2023-03-15T10:20:30.123-05:30",
+            "2023-03-15T00:20:30.123+14:00",
+            "2023-03-15T23:20:30.123-18:00",
+            "2023-01-01T00:00:00.000+18:00",
+    })
+    void parsesOffsets(String timestamp) {
+        assertSameAsJdk(timestamp);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2024-02-29T12:00:00Z",
+            "2000-02-29T12:00:00.5Z",
+            "1904-02-29T23:59:59.999Z",
+            "1600-02-29T00:00:00Z",
+            "2023-02-28T23:59:59.999-01:00",
+            "2023-12-31T23:59:59.999Z",
+    })
+    void parsesLeapDays(String timestamp) {
+        assertSameAsJdk(timestamp);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "1969-12-31T23:59:59.999Z",
+            "1969-12-31T23:59:59Z",
+            "1970-01-01T00:00:00Z",
+            "1900-01-01T00:00:00.001Z",
+            "1583-10-15T12:34:56.789+01:00",
+            "0001-01-01T00:00:00Z",
+    })
+    void parsesYearsAroundAndBeforeEpoch(String timestamp) {
+        assertSameAsJdk(timestamp);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2023-01-01T00:00:00.Z",
+            "2023-01-01T10:20Z",
+            "2023-01-01T10:20:30.5+01:00:30",
+            "+12023-01-01T10:20:30Z",
+    })
+    void parsesOtherLayoutsThroughTheJdk(String timestamp) {
+        assertSameAsJdk(timestamp);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "1900-02-29T00:00:00Z",
+            "2023-02-29T00:00:00Z",
+            "2023-04-31T00:00:00Z",
+            "2023-13-01T00:00:00Z",
+            "2023-01-01T24:00:00Z",
+            "2023-01-01T00:00:00.1234567890Z",
+            "2023-01-01T00:00:00+19:00",
+            "2023-01-01T00:00:00",
+            "2023-01-01 00:00:00Z",
+            "not a timestamp",
+    })
+    void rejectsWhatTheJdkRejects(String timestamp) {
+        assertThrows(DateTimeParseException.class,
+                     () -> DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(timestamp, Instant::from));
+        assertThrows(DateTimeParseException.class, () -> TimestampParser.toEpochMillis(timestamp));
+    }
+
+    @Test
+    void parsesRandomTimestampsLikeTheJdk() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long epochSecond = random.nextLong() % 100_000_000_000L;
+            Instant instant = Instant.ofEpochSecond(epochSecond, random.nextInt(1_000_000_000));
+            ZoneOffset offset = ZoneOffset.ofTotalSeconds((random.nextInt(36 * 4 + 1) - 18 * 4) * 900);
+            assertSameAsJdk(OffsetDateTime.ofInstant(instant, offset).format(DateTimeFormatter.ISO_OFFSET_DATE_TIME));
+            assertSameAsJdk(instant.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2023-03-15T10:20:30.123Z",
+            "2023-03-15T10:20:30Z",
+            "2023-03-15T10:20:30.123456789Z",
+            "2023-03-15T10:20:30.123+01:00",
+            "1969-12-31T23:59:59.999Z",
+            "2016-12-31T23:59:60Z",
+    })
+    void fallsBackToTheGivenFormatterLikeInstantParse(String timestamp) {
+        assertEquals(Instant.parse(timestamp).toEpochMilli(),
+                     TimestampParser.toEpochMillis(timestamp, DateTimeFormatter.ISO_INSTANT));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"2023-02-29T00:00:00Z", "2023-03-15T10:20:30", "not a timestamp"})
+    void rejectsWhatInstantParseRejects(String timestamp) {
+        assertThrows(DateTimeParseException.class, () -> Instant.parse(timestamp));
+        assertThrows(DateTimeParseException.class,
+                     () -> TimestampParser.toEpochMillis(timestamp, DateTimeFormatter.ISO_INSTANT));
+    }
+
+    private static void assertSameAsJdk(String timestamp) {
+        long expected = DateTimeFormatter.ISO_OFFSET_DATE_TIME.parse(timestamp, Instant::from).toEpochMilli();
+        assertEquals(expected, TimestampParser.toEpochMillis(timestamp), timestamp);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.axonserver;
+
+import io.axoniq.axonserver.connector.event.EventStream;
+import io.axoniq.axonserver.grpc.event.Event;
+import io.axoniq.axonserver.grpc.event.EventWithToken;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import org.axonframework.axonserver.connector.AxonServerConfiguration;
+import org.axonframework.axonserver.connector.AxonServerConnectionManager;
+import org.axonframework.serialization.Serializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link AxonServerEventProducer} against a mocked event stream.
+ */
+class AxonServerEventProducerTest {
+
+    private EventStream eventStream;
+    private MigrationBaseProperties properties;
+    private AxonServerEventProducer producer;
+
+    @BeforeEach
+    void setUp() {
+        eventStream = mock(EventStream.class);
+        AxonServerConnectionManager connectionManager = mock(AxonServerConnectionManager.class, RETURNS_DEEP_STUBS);
+        when(connectionManager.getConnection().eventChannel().openStream(anyLong(), anyInt(), anyInt()))
+                .thenReturn(eventStream);
+        properties = new MigrationBaseProperties();
+        producer = new AxonServerEventProducer(connectionManager,
+                                               new AxonServerConfiguration(),
+                                               mock(Serializer.class),
+                                               properties);
+    }
+
+    @Test
+    void returnsPartialBatchOnceStreamRunsDry() throws InterruptedException {
+        when(eventStream.nextIfAvailable(anyLong(), eq(TimeUnit.MILLISECONDS))).thenReturn(event(0));
+        when(eventStream.nextIfAvailable()).thenReturn(event(1), (EventWithToken) null);
+
+        List<? extends AxonServerBackedDomainEvent> events = producer.findEvents(EventPosition.of(-1L, null), 10);
+
+        assertEquals(2, events.size());
+        assertEquals(1, events.get(1).getGlobalIndex());
+        verify(eventStream, times(1)).nextIfAvailable(anyLong(), eq(TimeUnit.MILLISECONDS));
+        verify(eventStream, times(2)).nextIfAvailable();
+    }
+
+    @Test
+    void waitsForFirstEventNoLongerThanTailPollWhenContinuous() throws InterruptedException {
+        properties.setContinuous(true);
+        properties.setTailPollMinMillis(25);
+
+        assertEquals(0, producer.findEvents(EventPosition.of(-1L, null), 10).size());
+
+        verify(eventStream).nextIfAvailable(25, TimeUnit.MILLISECONDS);
+    }
+
+    private EventWithToken event(long token) {
+        return EventWithToken.newBuilder()
+                             .setToken(token)
+                             .setEvent(Event.newBuilder().setMessageIdentifier("event-" + token))
+                             .build();
+    }
+}
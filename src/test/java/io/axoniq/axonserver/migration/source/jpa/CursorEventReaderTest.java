@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.jpa;
+
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.query.SelectionQuery;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the {@link CursorEventReader} against a mocked session, holding the events with the given global indexes.
+ */
+class CursorEventReaderTest {
+
+    private final Deque<DomainEventEntry> rows = new ArrayDeque<>();
+    private SelectionQuery<Long> maxIndexQuery;
+    private long maxIndex;
+    private CursorEventReader testSubject;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        SessionFactory sessionFactory = mock(SessionFactory.class);
+        StatelessSession session = mock(StatelessSession.class);
+        when(sessionFactory.openStatelessSession()).thenReturn(session);
+        when(session.getTransaction()).thenReturn(mock(Transaction.class));
+
+        maxIndexQuery = mock(SelectionQuery.class);
+        when(maxIndexQuery.getSingleResult()).thenAnswer(invocation -> maxIndex);
+        when(session.createNamedSelectionQuery("DomainEventEntry.maxGlobalIndex", Long.class))
+                .thenReturn(maxIndexQuery);
+
+        SelectionQuery<DomainEventEntry> rangeQuery = mock(SelectionQuery.class, RETURNS_SELF);
+        when(rangeQuery.scroll(any())).thenAnswer(invocation -> {
+            ScrollableResults<DomainEventEntry> results = mock(ScrollableResults.class);
+            when(results.next()).thenAnswer(next -> !rows.isEmpty());
+            when(results.get()).thenAnswer(get -> rows.poll());
+            return results;
+        });
+        when(session.createNamedSelectionQuery("DomainEventEntry.findByGlobalIndexRange", DomainEventEntry.class))
+                .thenReturn(rangeQuery);
+
+        testSubject = new CursorEventReader(sessionFactory, 100, Duration.ofMinutes(10));
+    }
+
+    @Test
+    void opensCursorAgainOnlyAfterEventsPastItsEnd() {
+        addRows(0, 1);
+
+        assertEquals(2, testSubject.next(-1, 10).size());
+        assertTrue(testSubject.next(1, 10).isEmpty());
+        verify(maxIndexQuery, times(1)).getSingleResult();
+
+        // Tailing, nothing new was found by the batch query
+        assertTrue(testSubject.next(1, 10).isEmpty());
+        assertTrue(testSubject.next(1, 10).isEmpty());
+        verify(maxIndexQuery, times(1)).getSingleResult();
+
+        // The batch query found event 2, the cursor continues after it
+        addRows(3, 4);
+        assertEquals(2, testSubject.next(2, 10).size());
+        verify(maxIndexQuery, times(2)).getSingleResult();
+    }
+
+    private void addRows(long... globalIndexes) {
+        for (long globalIndex : globalIndexes) {
+            DomainEventEntry entry = mock(DomainEventEntry.class);
+            when(entry.getGlobalIndex()).thenReturn(globalIndex);
+            rows.add(entry);
+            maxIndex = globalIndex;
+        }
+    }
+}
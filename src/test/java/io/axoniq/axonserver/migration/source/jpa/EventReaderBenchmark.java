@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.jpa;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading batches of events through the {@link JdbcEventReader} with the JPA query used by the
+ * {@link JpaEventProducer}, against an in-memory H2 database. Run it through its {@link #main(String[]) main method}
+ * from the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventReaderBenchmark {
+
+    private static final int EVENTS = 20_000;
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    @Param({"1024"})
+    private int payloadSize;
+
+    private JdbcDataSource dataSource;
+    private Connection keepAlive;
+    private SessionFactory sessionFactory;
+    private JdbcEventReader jdbcEventReader;
+    private long lastToken;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:benchmark");
+        keepAlive = dataSource.getConnection();
+        Configuration configuration = new Configuration().addAnnotatedClass(DomainEventEntry.class)
+                                                         .addAnnotatedClass(SnapshotEventEntry.class)
+                                                         .setProperty(AvailableSettings.HBM2DDL_AUTO, "create");
+        configuration.getProperties().put(AvailableSettings.JAKARTA_NON_JTA_DATASOURCE, dataSource);
+        sessionFactory = configuration.buildSessionFactory();
+        jdbcEventReader = new JdbcEventReader(dataSource, true);
+        insertEvents();
+    }
+
+    private void insertEvents() throws SQLException {
+        byte[] payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        byte[] metaData = "<meta-data><entry><string>traceId</string><string>abc</string></entry></meta-data>"
+                .getBytes(StandardCharsets.UTF_8);
+        String timestamp = Instant.now().toString();
+        try (PreparedStatement insert = keepAlive.prepareStatement(
+                "insert into DomainEventEntry (globalIndex, type, aggregateIdentifier, sequenceNumber, "
+                        + "eventIdentifier, timeStamp, payloadType, payloadRevision, payload, metaData) "
+                        + "values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for (int i = 0; i < EVENTS; i++) {
+                insert.setLong(1, i);
+                insert.setString(2, "Aggregate");
+                insert.setString(3, "aggregate-" + i / 10);
+                insert.setLong(4, i % 10);
+                insert.setString(5, UUID.randomUUID().toString());
+                insert.setString(6, timestamp);
+                insert.setString(7, "com.example.SomethingHappened");
+                insert.setString(8, null);
+                insert.setBytes(9, payload);
+                insert.setBytes(10, metaData);
+                insert.addBatch();
+            }
+            insert.executeBatch();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        sessionFactory.close();
+        keepAlive.close();
+    }
+
+    @Benchmark
+    public List<? extends DomainEventEntry> jpa() {
+        long from = nextToken();
+        return sessionFactory.fromTransaction(
+                session -> session.createNamedQuery("DomainEventEntry.findByGlobalIndex", DomainEventEntry.class)
+                                  .setParameter("lastToken", from)
+                                  .setMaxResults(batchSize)
+                                  .getResultList());
+    }
+
+    @Benchmark
+    public List<JdbcDomainEvent> jdbc() {
+        return jdbcEventReader.findEvents(nextToken(), batchSize);
+    }
+
+    /**
+     * Moves through the table, so each batch reads other rows.
+     */
+    private long nextToken() {
+        lastToken = (lastToken + batchSize) % (EVENTS - batchSize);
+        return lastToken - 1;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventReaderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
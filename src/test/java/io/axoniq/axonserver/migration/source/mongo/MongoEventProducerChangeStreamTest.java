@@ -0,0 +1,162 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.mongo;
+
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.testcontainers.containers.MongoDBContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.axonframework.common.DateTimeUtils.formatInstant;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Runs the continuous Mongo migration against a single-node replica set, as change streams require one.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+class MongoEventProducerChangeStreamTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    @Container
+    private static final MongoDBContainer MONGO = new MongoDBContainer("mongo:7.0");
+
+    private MongoClient client;
+    private MongoTemplate template;
+    private MigrationBaseProperties properties;
+    private final List<MongoEventProducer> producers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        client = MongoClients.create(MONGO.getReplicaSetUrl());
+        template = new MongoTemplate(client, "migration");
+        template.getCollection("domainevents").drop();
+        properties = new MigrationBaseProperties();
+        properties.setContinuous(true);
+        properties.setTailPollMinMillis(100);
+    }
+
+    @AfterEach
+    void tearDown() {
+        producers.forEach(MongoEventProducer::close);
+        client.close();
+    }
+
+    @Test
+    void readsOlderEventsThroughCursorAndNewOnesThroughChangeStream() {
+        Instant old = Instant.now().minus(Duration.ofHours(1));
+        insert(event("aggregate-1", 0, old), event("aggregate-1", 1, old.plusMillis(1)));
+        MongoEventProducer testSubject = producer();
+
+        List<MongoDomainEvent> historical = read(testSubject, initialPosition(), 2);
+        assertEquals(Arrays.asList("aggregate-1-0", "aggregate-1-1"), ids(historical));
+        historical.forEach(event -> assertNull(event.getResumeToken()));
+
+        EventPosition position = position(historical.get(1));
+        assertEquals(0, testSubject.findEvents(position, 10).size());
+        insert(event("aggregate-2", 0, Instant.now()), event("aggregate-2", 1, Instant.now()));
+
+        List<MongoDomainEvent> streamed = read(testSubject, position, 2);
+        assertEquals(Arrays.asList("aggregate-2-0", "aggregate-2-1"), ids(streamed));
+        streamed.forEach(event -> assertNotNull(event.getResumeToken()));
+    }
+
+    @Test
+    void restartsChangeStreamFromResumeToken() {
+        MongoEventProducer first = producer();
+        EventPosition position = initialPosition();
+        assertEquals(0, first.findEvents(position, 10).size());
+        insert(event("aggregate-1", 0, Instant.now()), event("aggregate-1", 1, Instant.now()));
+        List<MongoDomainEvent> streamed = read(first, position, 2);
+        first.close();
+
+        MongoEventProducer restarted = producer();
+        EventPosition afterFirst = position(streamed.get(0));
+        insert(event("aggregate-1", 2, Instant.now()));
+
+        assertEquals(Arrays.asList("aggregate-1-1", "aggregate-1-2"), ids(read(restarted, afterFirst, 2)));
+    }
+
+    private MongoEventProducer producer() {
+        MongoEventProducer producer = new MongoEventProducer(template, properties, 0, 0, true, false, false);
+        producers.add(producer);
+        return producer;
+    }
+
+    /**
+     * Reads from the producer until the expected amount of events has been found, as the change stream returns them
+     * as they come in.
+     */
+    private static List<MongoDomainEvent> read(MongoEventProducer producer, EventPosition position, int expected) {
+        List<MongoDomainEvent> events = new ArrayList<>();
+        Instant deadline = Instant.now().plus(TIMEOUT);
+        while (events.size() < expected && Instant.now().isBefore(deadline)) {
+            List<? extends MongoDomainEvent> batch = producer.findEvents(position, 10);
+            if (!batch.isEmpty()) {
+                events.addAll(batch);
+                position = position(batch.get(batch.size() - 1));
+            }
+        }
+        return events;
+    }
+
+    private static EventPosition initialPosition() {
+        return new EventPosition(-1, null, -1, null);
+    }
+
+    private static EventPosition position(MongoDomainEvent event) {
+        return EventPosition.of(event.getGlobalIndex(), event);
+    }
+
+    private void insert(Document... events) {
+        template.getCollection("domainevents").insertMany(Arrays.asList(events));
+    }
+
+    private static Document event(String aggregateIdentifier, long sequenceNumber, Instant timestamp) {
+        return new Document("aggregateIdentifier", aggregateIdentifier)
+                .append("type", "Aggregate")
+                .append("sequenceNumber", sequenceNumber)
+                .append("serializedPayload", "<payload/>")
+                .append("timestamp", formatInstant(timestamp))
+                .append("payloadType", "com.example.Event")
+                .append("payloadRevision", null)
+                .append("serializedMetaData", "<meta-data/>")
+                .append("eventIdentifier", aggregateIdentifier + "-" + sequenceNumber);
+    }
+
+    private static List<String> ids(List<MongoDomainEvent> events) {
+        return events.stream().map(MongoDomainEvent::getEventIdentifier).collect(Collectors.toList());
+    }
+}
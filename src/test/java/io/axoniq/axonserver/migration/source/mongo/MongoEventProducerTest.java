@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.axoniq.axonserver.migration.source.mongo;
+
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.axoniq.axonserver.migration.MigrationBaseProperties;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.conversions.Bson;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.axonframework.common.DateTimeUtils.formatInstant;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs the Mongo producer against mocked collections. The event documents are returned from the lower bound on the
+ * timestamp in the filter on, like the database would. The change stream returns the changes added by the test.
+ */
+class MongoEventProducerTest {
+
+    private static final Instant START = Instant.parse("2023-03-15T10:20:30Z");
+    private static final Pattern TIMESTAMP_FROM = Pattern.compile("\"timestamp\": \\{\"\\$gte\": \"([^\"]+)\"");
+
+    private final List<RawBsonDocument> events = new ArrayList<>();
+    private final Deque<ChangeStreamDocument<RawBsonDocument>> changes = new ArrayDeque<>();
+    private MongoTemplate template;
+    private MongoCollection<RawBsonDocument> rawCollection;
+    private ChangeStreamIterable<RawBsonDocument> changeStream;
+    private final List<MongoEventProducer> producers = new ArrayList<>();
+    private MongoEventProducer testSubject;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        template = mock(MongoTemplate.class);
+        MongoCollection<Document> collection = mock(MongoCollection.class);
+        rawCollection = mock(MongoCollection.class);
+        FindIterable<Document> firstDocument = mock(FindIterable.class, RETURNS_SELF);
+        when(template.getCollection("domainevents")).thenReturn(collection);
+        when(collection.find()).thenReturn(firstDocument);
+        when(firstDocument.first()).thenReturn(new Document("timestamp", formatInstant(START)));
+        when(collection.withDocumentClass(RawBsonDocument.class)).thenReturn(rawCollection);
+        when(rawCollection.find(any(Bson.class))).thenAnswer(invocation -> find(invocation.getArgument(0)));
+        changeStream = mock(ChangeStreamIterable.class, RETURNS_SELF);
+        MongoChangeStreamCursor<ChangeStreamDocument<RawBsonDocument>> changeCursor =
+                mock(MongoChangeStreamCursor.class);
+        when(rawCollection.watch(anyList())).thenReturn(changeStream);
+        when(changeStream.cursor()).thenReturn(changeCursor);
+        when(changeCursor.tryNext()).thenAnswer(invocation -> changes.poll());
+        for (int i = 0; i < 6; i++) {
+            events.add(event("aggregate", i));
+        }
+        testSubject = producer(new MigrationBaseProperties());
+    }
+
+    @AfterEach
+    void tearDown() {
+        producers.forEach(MongoEventProducer::close);
+    }
+
+    @Test
+    void continuesCursorAfterLastEventReturned() {
+        List<? extends MongoDomainEvent> first = testSubject.findEvents(new EventPosition(-1, null, -1, null), 2);
+        List<? extends MongoDomainEvent> second = testSubject.findEvents(positionOf(first), 2);
+        List<? extends MongoDomainEvent> third = testSubject.findEvents(positionOf(second), 2);
+
+        assertEquals(Arrays.asList("aggregate-0", "aggregate-1"), ids(first));
+        assertEquals(Arrays.asList("aggregate-2", "aggregate-3"), ids(second));
+        assertEquals(Arrays.asList("aggregate-4", "aggregate-5"), ids(third));
+        verify(rawCollection, times(1)).find(any(Bson.class));
+    }
+
+    @Test
+    void readsEventsAgainAfterEarlierPosition() {
+        List<? extends MongoDomainEvent> first = testSubject.findEvents(new EventPosition(-1, null, -1, null), 2);
+        testSubject.findEvents(positionOf(first), 2);
+
+        // Storing the second batch failed, so the migration continues from the checkpoint after the first
+        List<? extends MongoDomainEvent> replayed = testSubject.findEvents(positionOf(first), 2);
+        List<? extends MongoDomainEvent> next = testSubject.findEvents(positionOf(replayed), 2);
+
+        assertEquals(Arrays.asList("aggregate-2", "aggregate-3"), ids(replayed));
+        assertEquals(Arrays.asList("aggregate-4", "aggregate-5"), ids(next));
+        verify(rawCollection, times(2)).find(any(Bson.class));
+    }
+
+    @Test
+    void continuesWithChangeStreamAndResumesIt() {
+        MigrationBaseProperties properties = new MigrationBaseProperties();
+        properties.setContinuous(true);
+        MongoEventProducer tailing = producer(properties);
+        changes.add(change(event("aggregate", 6), "1"));
+
+        List<? extends MongoDomainEvent> historical = tailing.findEvents(new EventPosition(-1, null, -1, null), 10);
+        List<? extends MongoDomainEvent> inserted = tailing.findEvents(positionOf(historical), 10);
+
+        assertEquals(6, historical.size());
+        assertEquals(Collections.singletonList("aggregate-6"), ids(inserted));
+        assertEquals("{\"_data\": \"1\"}", inserted.get(0).getResumeToken());
+        verify(changeStream).startAtOperationTime(any());
+
+        // A next run continues the change stream from the resume token of the checkpoint
+        changes.add(change(event("aggregate", 7), "2"));
+        MongoEventProducer restarted = producer(properties);
+        List<? extends MongoDomainEvent> resumed = restarted.findEvents(positionOf(inserted), 10);
+
+        assertEquals(Collections.singletonList("aggregate-7"), ids(resumed));
+        verify(changeStream).resumeAfter(BsonDocument.parse("{\"_data\": \"1\"}"));
+        verify(rawCollection, times(1)).find(any(Bson.class));
+    }
+
+    private MongoEventProducer producer(MigrationBaseProperties properties) {
+        MongoEventProducer producer = new MongoEventProducer(template, properties, 10, 15, true, false, false);
+        producers.add(producer);
+        return producer;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ChangeStreamDocument<RawBsonDocument> change(RawBsonDocument document, String resumeToken) {
+        ChangeStreamDocument<RawBsonDocument> change = mock(ChangeStreamDocument.class);
+        when(change.getFullDocument()).thenReturn(document);
+        when(change.getResumeToken()).thenReturn(new BsonDocument("_data", new BsonString(resumeToken)));
+        return change;
+    }
+
+    @SuppressWarnings("unchecked")
+    private FindIterable<RawBsonDocument> find(Bson filter) {
+        Matcher from = TIMESTAMP_FROM.matcher(filter.toBsonDocument().toJson());
+        String fromTimestamp = from.find() ? from.group(1) : "";
+        Iterator<RawBsonDocument> iterator = events.stream()
+                                                   .filter(event -> event.getString("timestamp").getValue()
+                                                                         .compareTo(fromTimestamp) >= 0)
+                                                   .collect(Collectors.toList())
+                                                   .iterator();
+        MongoCursor<RawBsonDocument> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        FindIterable<RawBsonDocument> iterable = mock(FindIterable.class, RETURNS_SELF);
+        when(iterable.iterator()).thenReturn(cursor);
+        return iterable;
+    }
+
+    private static EventPosition positionOf(List<? extends MongoDomainEvent> events) {
+        MongoDomainEvent last = events.get(events.size() - 1);
+        return EventPosition.of(last.getGlobalIndex(), last);
+    }
+
+    private static List<String> ids(List<? extends MongoDomainEvent> events) {
+        return events.stream().map(MongoDomainEvent::getEventIdentifier).collect(Collectors.toList());
+    }
+
+    private static RawBsonDocument event(String aggregateIdentifier, long sequenceNumber) {
+        Document document = new Document("aggregateIdentifier", aggregateIdentifier)
+                .append("type", "Aggregate")
+                .append("sequenceNumber", sequenceNumber)
+                .append("serializedPayload", "<payload/>")
+                .append("timestamp", formatInstant(START.plusMillis(sequenceNumber)))
+                .append("payloadType", "com.example.Event")
+                .append("eventIdentifier", aggregateIdentifier + "-" + sequenceNumber);
+        return new RawBsonDocument(document, new DocumentCodec());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.mongo;
+
+import com.mongodb.client.MongoCursor;
+import io.axoniq.axonserver.migration.source.EventPosition;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderedEventCursorTest {
+
+    private static final String FIRST = "2023-03-15T10:20:30.123Z";
+    private static final String SECOND = "2023-03-15T10:20:30.124Z";
+
+    @Test
+    void ordersDocumentsSharingTimestampAndSequenceNumberByAggregate() {
+        List<MongoDomainEvent> events = OrderedEventCursor.decode(Arrays.asList(event("c", FIRST, 0),
+                                                                                event("a", FIRST, 1),
+                                                                                event("b", FIRST, 0),
+                                                                                event("a", FIRST, 0),
+                                                                                event("a", SECOND, 0)), null);
+
+        assertEquals(Arrays.asList("a-0", "b-0", "c-0", "a-1", "a-0@" + SECOND), ids(events));
+    }
+
+    @Test
+    void keepsTiedDocumentsInOneBatch() {
+        OrderedEventCursor testSubject = cursor(null,
+                                                event("b", FIRST, 0),
+                                                event("a", FIRST, 0),
+                                                event("c", FIRST, 0),
+                                                event("a", SECOND, 0));
+
+        assertEquals(Arrays.asList("a-0", "b-0", "c-0"), ids(testSubject.next(1)));
+        assertEquals(Collections.singletonList("a-0@" + SECOND), ids(testSubject.next(1)));
+        assertTrue(testSubject.next(1).isEmpty());
+    }
+
+    @Test
+    void leavesOutEventsMigratedBeforeResumePosition() {
+        OrderedEventCursor.ResumePosition resumePosition =
+                new OrderedEventCursor.ResumePosition(FIRST, 0, new EventPosition(0, "b", 0, null));
+        OrderedEventCursor testSubject = cursor(resumePosition,
+                                                event("c", FIRST, 0),
+                                                event("b", FIRST, 0),
+                                                event("a", FIRST, 0),
+                                                event("a", FIRST, 1),
+                                                event("b", SECOND, 0));
+
+        assertEquals(Arrays.asList("c-0", "a-1", "b-0@" + SECOND), ids(testSubject.next(10)));
+    }
+
+    @Test
+    void continuesAfterBatchOfMigratedEvents() {
+        OrderedEventCursor.ResumePosition resumePosition =
+                new OrderedEventCursor.ResumePosition(FIRST, 0, new EventPosition(0, "b", 0, null));
+        OrderedEventCursor testSubject = cursor(resumePosition,
+                                                event("b", FIRST, 0),
+                                                event("a", FIRST, 0),
+                                                event("a", SECOND, 0),
+                                                event("b", SECOND, 0));
+
+        assertEquals(Arrays.asList("a-0@" + SECOND, "b-0@" + SECOND), ids(testSubject.next(1)));
+    }
+
+    @Test
+    void leavesOutEventsMigratedFromCommit() {
+        OrderedEventCursor.ResumePosition resumePosition =
+                new OrderedEventCursor.ResumePosition(FIRST, 4, new EventPosition(0, "b", 5, null));
+        List<MongoDomainEvent> events = OrderedEventCursor.decode(Arrays.asList(commit("b", FIRST, 4, 3),
+                                                                                commit("a", FIRST, 4, 2),
+                                                                                commit("c", FIRST, 4, 1)),
+                                                                  resumePosition);
+
+        assertEquals(Arrays.asList("b-6", "c-4"), ids(events));
+    }
+
+    @Test
+    void keepsEventsOfUnwoundCommitsTogether() {
+        List<MongoDomainEvent> events = OrderedEventCursor.decode(Arrays.asList(unwound("b", FIRST, 4, 4),
+                                                                                unwound("b", FIRST, 4, 5),
+                                                                                unwound("a", FIRST, 4, 4),
+                                                                                unwound("a", FIRST, 4, 5)), null);
+
+        assertEquals(Arrays.asList("a-4", "a-5", "b-4", "b-5"), ids(events));
+    }
+
+    private static OrderedEventCursor cursor(OrderedEventCursor.ResumePosition resumePosition,
+                                             RawBsonDocument... documents) {
+        Iterator<RawBsonDocument> iterator = Arrays.asList(documents).iterator();
+        @SuppressWarnings("unchecked")
+        MongoCursor<RawBsonDocument> cursor = mock(MongoCursor.class);
+        when(cursor.hasNext()).thenAnswer(invocation -> iterator.hasNext());
+        when(cursor.next()).thenAnswer(invocation -> iterator.next());
+        return new OrderedEventCursor(cursor, resumePosition);
+    }
+
+    private static List<String> ids(List<MongoDomainEvent> events) {
+        return events.stream().map(MongoDomainEvent::getEventIdentifier).collect(Collectors.toList());
+    }
+
+    private static Document eventDocument(String aggregateIdentifier, String timestamp, long sequenceNumber) {
+        String id = aggregateIdentifier + "-" + sequenceNumber + (FIRST.equals(timestamp) ? "" : "@" + timestamp);
+        return new Document("aggregateIdentifier", aggregateIdentifier)
+                .append("type", "Aggregate")
+                .append("sequenceNumber", sequenceNumber)
+                .append("serializedPayload", "<payload/>")
+                .append("timestamp", timestamp)
+                .append("payloadType", "com.example.Event")
+                .append("eventIdentifier", id);
+    }
+
+    private static RawBsonDocument event(String aggregateIdentifier, String timestamp, long sequenceNumber) {
+        return raw(eventDocument(aggregateIdentifier, timestamp, sequenceNumber));
+    }
+
+    private static RawBsonDocument commit(String aggregateIdentifier,
+                                          String timestamp,
+                                          long firstSequenceNumber,
+                                          int size) {
+        Document[] events = new Document[size];
+        for (int i = 0; i < size; i++) {
+            events[i] = eventDocument(aggregateIdentifier, timestamp, firstSequenceNumber + i);
+        }
+        return raw(new Document("aggregateIdentifier", aggregateIdentifier)
+                           .append("firstTimestamp", timestamp)
+                           .append("firstSequenceNumber", firstSequenceNumber)
+                           .append("lastSequenceNumber", firstSequenceNumber + size - 1)
+                           .append("events", Arrays.asList(events)));
+    }
+
+    private static RawBsonDocument unwound(String aggregateIdentifier,
+                                           String timestamp,
+                                           long firstSequenceNumber,
+                                           long sequenceNumber) {
+        return raw(eventDocument(aggregateIdentifier, timestamp, sequenceNumber)
+                           .append("firstTimestamp", timestamp)
+                           .append("firstSequenceNumber", firstSequenceNumber));
+    }
+
+    private static RawBsonDocument raw(Document document) {
+        return new RawBsonDocument(document, new DocumentCodec());
+    }
+}
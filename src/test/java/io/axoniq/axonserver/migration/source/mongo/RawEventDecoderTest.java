@@ -0,0 +1,215 @@
+/*
+ * Copyright (c) 2010-2023. AxonIQ
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.axoniq.axonserver.migration.source.mongo;
+
+import org.bson.BsonSerializationException;
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RawEventDecoderTest {
+
+    @Test
+    void decodesEventDocument() {
+        Document document = event("event-1", 5L);
+
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void decodesInt32SequenceNumber() {
+        Document document = event("event-1", 5);
+
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void decodesNullMetaData() {
+        Document document = event("event-1", 5L).append("serializedMetaData", null);
+
+        List<MongoDomainEvent> decoded = decode(document, null);
+
+        assertNull(decoded.get(0).getMetaData());
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void decodesMissingMetaData() {
+        Document document = event("event-1", 5L);
+        document.remove("serializedMetaData");
+
+        assertNull(decode(document, null).get(0).getMetaData());
+    }
+
+    @Test
+    void decodesNullPayloadRevision() {
+        Document document = event("event-1", 5L).append("payloadRevision", null);
+
+        assertNull(decode(document, null).get(0).getPayloadRevision());
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void decodesBinaryPayloadAndMetaData() {
+        Document document = event("event-1", 5L)
+                .append("serializedPayload", new Binary(new byte[]{0, 1, 2, (byte) 0xFF}))
+                .append("serializedMetaData", new Binary((byte) 0x80, "<meta-data/>".getBytes(StandardCharsets.UTF_8)));
+
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void decodesOldBinarySubtype() {
+        Document document = event("event-1", 5L)
+                .append("serializedPayload", new Binary((byte) 0x02, new byte[]{0, 1, 2, (byte) 0xFF}));
+
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void skipsOtherFields() {
+        Document document = new Document("_id", new ObjectId())
+                .append("nested", new Document("timestamp", 1).append("sequenceNumber", "not this one"))
+                .append("flags", Arrays.asList(true, 1.5, null));
+        document.putAll(event("event-1", 5L));
+        document.append("trailing", 42L);
+
+        assertDecodedAsDocument(document);
+    }
+
+    @Test
+    void decodesCommitDocument() {
+        Document commit = new Document("_id", new ObjectId())
+                .append("aggregateIdentifier", "aggregate-1")
+                .append("type", "Aggregate")
+                .append("firstSequenceNumber", 4L)
+                .append("lastSequenceNumber", 6L)
+                .append("firstTimestamp", "2023-03-15T10:20:30.123Z")
+                .append("lastTimestamp", "2023-03-15T10:20:31.123Z")
+                .append("events", Arrays.asList(event("event-1", 4L),
+                                                event("event-2", 5),
+                                                event("event-3", 6L).append("serializedMetaData", null)));
+
+        List<MongoDomainEvent> decoded = decode(commit, "token");
+
+        @SuppressWarnings("unchecked")
+        List<Document> events = (List<Document>) commit.get("events");
+        assertEquals(events.size(), decoded.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertSameEvent(events.get(i), decoded.get(i));
+            assertEquals("token", decoded.get(i).getResumeToken());
+        }
+    }
+
+    @Test
+    void keepsResumeToken() {
+        assertEquals("token", decode(event("event-1", 5L), "token").get(0).getResumeToken());
+    }
+
+    @Test
+    void rejectsPayloadOfOtherType() {
+        Document document = event("event-1", 5L).append("serializedPayload", 42);
+
+        assertThrows(BsonSerializationException.class, () -> decode(document, null));
+    }
+
+    @Test
+    void rejectsMetaDataOfOtherType() {
+        Document document = event("event-1", 5L).append("serializedMetaData", new Document("key", "value"));
+
+        assertThrows(BsonSerializationException.class, () -> decode(document, null));
+    }
+
+    @Test
+    void rejectsStringFieldOfOtherType() {
+        Document document = event("event-1", 5L).append("aggregateIdentifier", 42L);
+
+        assertThrows(BsonSerializationException.class, () -> decode(document, null));
+    }
+
+    @Test
+    void rejectsSequenceNumberOfOtherType() {
+        Document document = event("event-1", 5L).append("sequenceNumber", "5");
+
+        assertThrows(BsonSerializationException.class, () -> decode(document, null));
+    }
+
+    private static Document event(String eventIdentifier, Object sequenceNumber) {
+        return new Document("aggregateIdentifier", "aggregate-1")
+                .append("type", "Aggregate")
+                .append("sequenceNumber", sequenceNumber)
+                .append("serializedPayload", "<payload>" + eventIdentifier + "</payload>")
+                .append("timestamp", "2023-03-15T10:20:30.123Z")
+                .append("payloadType", "com.example.Event")
+                .append("payloadRevision", "1")
+                .append("serializedMetaData", "<meta-data><entry>é</entry></meta-data>")
+                .append("eventIdentifier", eventIdentifier);
+    }
+
+    private static List<MongoDomainEvent> decode(Document document, String resumeToken) {
+        List<MongoDomainEvent> results = new ArrayList<>();
+        RawEventDecoder.decode(new RawBsonDocument(document, new DocumentCodec()), resumeToken, results);
+        return results;
+    }
+
+    private static void assertDecodedAsDocument(Document document) {
+        List<MongoDomainEvent> decoded = decode(document, null);
+
+        assertEquals(1, decoded.size());
+        assertSameEvent(document, decoded.get(0));
+    }
+
+    /**
+     * Compares the decoded event with the fields read through a {@link Document} decoded from the same bytes.
+     */
+    private static void assertSameEvent(Document original, MongoDomainEvent decoded) {
+        Document expected = new RawBsonDocument(original, new DocumentCodec()).decode(new DocumentCodec());
+        assertEquals(expected.getString("timestamp"), decoded.getTimeStamp());
+        assertEquals(expected.getString("eventIdentifier"), decoded.getEventIdentifier());
+        assertEquals(expected.getString("payloadType"), decoded.getPayloadType());
+        assertEquals(expected.getString("payloadRevision"), decoded.getPayloadRevision());
+        assertEquals(expected.getString("type"), decoded.getType());
+        assertEquals(expected.getString("aggregateIdentifier"), decoded.getAggregateIdentifier());
+        assertEquals(((Number) expected.get("sequenceNumber")).longValue(), decoded.getSequenceNumber());
+        assertArrayEquals(bytes(expected.get("serializedPayload")), decoded.getPayload());
+        assertArrayEquals(bytes(expected.get("serializedMetaData")), decoded.getMetaData());
+    }
+
+    private static byte[] bytes(Object value) {
+        if (value == null) {
+            return null;
+        }
+        if (value instanceof Binary) {
+            return ((Binary) value).getData();
+        }
+        return ((String) value).getBytes(StandardCharsets.UTF_8);
+    }
+}